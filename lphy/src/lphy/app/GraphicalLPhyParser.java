@@ -10,6 +10,8 @@ public class GraphicalLPhyParser implements LPhyParser {
 
     LPhyParser wrappedParser;
     List<GraphicalModelChangeListener> listeners = new ArrayList<>();
+    // incremented whenever the model is changed by parse or clear
+    int version = 0;
 
     public GraphicalLPhyParser(LPhyParser parser) {
         wrappedParser = parser;
@@ -31,6 +33,7 @@ public class GraphicalLPhyParser implements LPhyParser {
 
     @Override
     public void parse(String code) {
+        version += 1;
         wrappedParser.parse(code);
         notifyListeners();
     }
@@ -47,10 +50,18 @@ public class GraphicalLPhyParser implements LPhyParser {
 
     @Override
     public void clear() {
+        version += 1;
         wrappedParser.clear();
         notifyListeners();
     }
 
+    /**
+     * @return a number that changes whenever the model is parsed into or cleared, even if the same lines are parsed again.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     public void addGraphicalModelChangeListener(GraphicalModelChangeListener listener) {
         listeners.add(listener);
     }
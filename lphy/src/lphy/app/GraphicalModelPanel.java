@@ -3,6 +3,7 @@ package lphy.app;
 import lphy.app.graphicalmodelcomponent.GraphicalModelComponent;
 import lphy.app.graphicalmodelcomponent.Layering;
 import lphy.core.Sampler;
+import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
 
 import javax.swing.*;
@@ -30,8 +31,10 @@ public class GraphicalModelPanel extends JPanel {
     TreeLog treeLog = new TreeLog();
 
     GraphicalLPhyParser parser;
+    Sampler sampler;
 
     JButton sampleButton = new JButton("Sample");
+    JButton resampleButton = new JButton("Update");
     JCheckBox showConstantNodes = new JCheckBox("Show constants");
     JComboBox<Layering> layeringAlgorithm = new TidyComboBox<>(new Layering[]{new Layering.LongestPathFromSinks(), new Layering.LongestPathFromSources()});
 
@@ -45,6 +48,7 @@ public class GraphicalModelPanel extends JPanel {
     GraphicalModelPanel(GraphicalLPhyParser parser) {
 
         this.parser = parser;
+        sampler = new Sampler(parser);
 
         interpreter = new GraphicalModelInterpreter(parser);
 
@@ -60,11 +64,14 @@ public class GraphicalModelPanel extends JPanel {
         layeringAlgorithm.setPreferredSize(new Dimension(200, 20));
 
         buttonPanel.add(sampleButton);
+        buttonPanel.add(resampleButton);
         buttonPanel.add(new JLabel(" Layering:"));
         buttonPanel.add(layeringAlgorithm);
         buttonPanel.add(showConstantNodes);
 
         sampleButton.addActionListener(e -> sample(1));
+        resampleButton.setToolTipText("Re-sample only the values that depend on edited constants");
+        resampleButton.addActionListener(e -> resample());
 
         showConstantNodes.addActionListener(new AbstractAction() {
             @Override
@@ -161,28 +168,47 @@ public class GraphicalModelPanel extends JPanel {
     }
 
     void sample(int reps, List<RandomVariableLogger> loggers) {
+        sample(reps, loggers, 1);
+    }
+
+    void sample(int reps, List<RandomVariableLogger> loggers, int threads) {
 
         long start = System.currentTimeMillis();
 
-        String id = null;
-        if (displayedElement instanceof Value && !((Value) displayedElement).isAnonymous()) {
-            id = ((Value) displayedElement).getId();
-        }
+        String id = getDisplayedId();
 
         loggers.add(variableLog);
         loggers.add(treeLog);
 
-        Sampler sampler = new Sampler(parser);
-        sampler.sample(reps, loggers);
+        if (threads > 1) {
+            sampler.sample(reps, loggers, threads, Utils.getRandom().nextLong());
+        } else sampler.sample(reps, loggers);
+
+        showSampledValue(id);
+        long end = System.currentTimeMillis();
+        System.out.println("sample(" + reps + ") took " + (end - start) + " ms.");
+    }
+
+    void resample() {
+        String id = getDisplayedId();
+        sampler.resample();
+        showSampledValue(id);
+    }
+
+    private String getDisplayedId() {
+        if (displayedElement instanceof Value && !((Value) displayedElement).isAnonymous()) {
+            return ((Value) displayedElement).getId();
+        }
+        return null;
+    }
 
+    private void showSampledValue(String id) {
         if (id != null && parser.getDictionary().get(id) != null) {
             showValue(parser.getDictionary().get(id));
         } else {
             Set<Value<?>> sinks = parser.getSinks();
             if (sinks.size() > 0) showValue(sinks.iterator().next());
         }
-        long end = System.currentTimeMillis();
-        System.out.println("sample(" + reps + ") took " + (end - start) + " ms.");
     }
 
     public JComponent getViewer(Object object) {
@@ -1,7 +1,9 @@
 package lphy.app;
 
 import lphy.evolution.alignment.AlignmentFileLogger;
+import lphy.evolution.alignment.ChannelAlignmentWriter;
 import lphy.core.Arguments;
+import lphy.core.BinaryVarFileLogger;
 import lphy.core.TreeFileLogger;
 import lphy.core.VarFileLogger;
 import lphy.graphicalModel.Command;
@@ -17,8 +19,8 @@ public class SampleCommand implements Command {
 
     LinguaPhyloStudio app;
 
-    static String[] arguments = {"n", "logFile", "treeFiles", "alignmentFiles", "name"};
-    static Object[] defaults = {1, false, false, false, "model"};
+    static String[] arguments = {"n", "logFile", "treeFiles", "alignmentFiles", "name", "threads", "binaryLogFile", "alignmentFormat"};
+    static Object[] defaults = {1, false, false, false, "model", 1, false, "nexus"};
 
     public SampleCommand(LinguaPhyloStudio app) {
         this.app = app;
@@ -69,6 +71,9 @@ public class SampleCommand implements Command {
         boolean writeTreesToFile = args.getBoolean(arguments[2], defaults[2]);
         boolean writeAlignmentsToFile = args.getBoolean(arguments[3], defaults[3]);
         String name = args.getString(arguments[4], defaults[4]);
+        int threads = args.getInteger(arguments[5], defaults[5]);
+        boolean writeVarsToBinaryFile = args.getBoolean(arguments[6], defaults[6]);
+        String alignmentFormat = args.getString(arguments[7], defaults[7]);
 
         List<RandomVariableLogger> loggers = new ArrayList<>();
 
@@ -76,9 +81,19 @@ public class SampleCommand implements Command {
             System.out.println("writing to file!");
             loggers.add(new VarFileLogger(name));
         }
+        if (writeVarsToBinaryFile) loggers.add(new BinaryVarFileLogger(name));
         if (writeTreesToFile) loggers.add(new TreeFileLogger(name));
-        if (writeAlignmentsToFile) loggers.add(new AlignmentFileLogger(name));
+        if (writeAlignmentsToFile) {
+            ChannelAlignmentWriter.Format format;
+            try {
+                format = ChannelAlignmentWriter.Format.valueOf(alignmentFormat);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(arguments[7] + " must be one of " +
+                        Arrays.toString(ChannelAlignmentWriter.Format.values()) + ", but was " + alignmentFormat);
+            }
+            loggers.add(new AlignmentFileLogger(name, format));
+        }
 
-        app.panel.sample(n, loggers);
+        app.panel.sample(n, loggers, threads);
     }
 }
@@ -0,0 +1,203 @@
+package lphy.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a log written by {@link BinaryVarFileLogger}. The file is memory-mapped and each column is read as a view
+ * of the mapped bytes, so no values are parsed.
+ * A block left incomplete at the end of the file, by a run that was stopped while writing, is ignored.
+ */
+public class BinaryLogReader {
+
+    private final String[] titles;
+    private final byte[] types;
+
+    // the views of each column, one per block
+    private final List<Object>[] blocks;
+    private final int rows;
+
+    public BinaryLogReader(String fileName) throws IOException {
+        this(new File(fileName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public BinaryLogReader(File file) throws IOException {
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer bytes = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[BinaryVarFileLogger.MAGIC.length];
+        if (bytes.remaining() < magic.length + 2 * Integer.BYTES) throw new IOException(file + " is not a binary log");
+        bytes.get(magic);
+        if (!Arrays.equals(magic, BinaryVarFileLogger.MAGIC)) throw new IOException(file + " is not a binary log");
+        int version = bytes.getInt();
+        if (version != BinaryVarFileLogger.VERSION) throw new IOException(file + " has unsupported binary log version " + version);
+
+        int columns = bytes.getInt();
+        titles = new String[columns];
+        types = new byte[columns];
+        int rowBytes = 0;
+        for (int i = 0; i < columns; i++) {
+            types[i] = bytes.get();
+            byte[] title = new byte[bytes.getInt()];
+            bytes.get(title);
+            titles[i] = new String(title, StandardCharsets.UTF_8);
+            rowBytes += width(i);
+        }
+
+        blocks = new List[columns];
+        for (int i = 0; i < columns; i++) {
+            blocks[i] = new ArrayList<>();
+        }
+        int rows = 0;
+        while (bytes.remaining() >= Integer.BYTES) {
+            int blockRows = bytes.getInt();
+            if (blockRows <= 0 || bytes.remaining() < (long) blockRows * rowBytes) break;
+            for (int i = 0; i < columns; i++) {
+                ByteBuffer column = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+                column.limit(blockRows * width(i));
+                blocks[i].add(types[i] == BinaryVarFileLogger.INT ? column.asIntBuffer() : column.asDoubleBuffer());
+                bytes.position(bytes.position() + blockRows * width(i));
+            }
+            rows += blockRows;
+        }
+        this.rows = rows;
+    }
+
+    private int width(int column) {
+        return types[column] == BinaryVarFileLogger.INT ? Integer.BYTES : Double.BYTES;
+    }
+
+    /**
+     * @return the column titles, starting with "sample", as in the header of the tab-separated log.
+     */
+    public String[] getTitles() {
+        return titles.clone();
+    }
+
+    public int getColumnCount() {
+        return titles.length;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return the index of the column with the given title, or -1 if there is none.
+     */
+    public int getColumnIndex(String title) {
+        for (int i = 0; i < titles.length; i++) {
+            if (titles[i].equals(title)) return i;
+        }
+        return -1;
+    }
+
+    public boolean isIntColumn(int column) {
+        return types[column] == BinaryVarFileLogger.INT;
+    }
+
+    /**
+     * @return views of the values of a double column, one per block of the file, in order.
+     */
+    public List<DoubleBuffer> getDoubleBuffers(int column) {
+        if (isIntColumn(column)) throw new IllegalArgumentException("Column " + titles[column] + " is an int column");
+        List<DoubleBuffer> buffers = new ArrayList<>();
+        for (Object block : blocks[column]) {
+            buffers.add(((DoubleBuffer) block).duplicate());
+        }
+        return buffers;
+    }
+
+    /**
+     * @return views of the values of an int column, one per block of the file, in order.
+     */
+    public List<IntBuffer> getIntBuffers(int column) {
+        if (!isIntColumn(column)) throw new IllegalArgumentException("Column " + titles[column] + " is a double column");
+        List<IntBuffer> buffers = new ArrayList<>();
+        for (Object block : blocks[column]) {
+            buffers.add(((IntBuffer) block).duplicate());
+        }
+        return buffers;
+    }
+
+    /**
+     * @return the values of a column, with the values of an int column converted to double.
+     */
+    public double[] getColumn(int column) {
+        double[] values = new double[rows];
+        int row = 0;
+        for (Object block : blocks[column]) {
+            if (isIntColumn(column)) {
+                IntBuffer ints = ((IntBuffer) block).duplicate();
+                while (ints.hasRemaining()) {
+                    values[row++] = ints.get();
+                }
+            } else {
+                DoubleBuffer doubles = ((DoubleBuffer) block).duplicate();
+                int n = doubles.remaining();
+                doubles.get(values, row, n);
+                row += n;
+            }
+        }
+        return values;
+    }
+
+    public double[] getColumn(String title) {
+        int column = getColumnIndex(title);
+        if (column < 0) throw new IllegalArgumentException("No column " + title);
+        return getColumn(column);
+    }
+
+    /**
+     * @return the values of an int column.
+     */
+    public int[] getIntColumn(int column) {
+        int[] values = new int[rows];
+        int row = 0;
+        for (IntBuffer ints : getIntBuffers(column)) {
+            int n = ints.remaining();
+            ints.get(values, row, n);
+            row += n;
+        }
+        return values;
+    }
+
+    /**
+     * Writes the log in the tab-separated format of {@link VarFileLogger}, which gives the same text as logging
+     * the same replicates with a VarFileLogger.
+     */
+    public void writeLog(Appendable out) throws IOException {
+        StringBuilder builder = new StringBuilder(String.join("\t", titles)).append("\n");
+        out.append(builder);
+
+        Object[] columns = new Object[titles.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = isIntColumn(i) ? getIntColumn(i) : getColumn(i);
+        }
+        for (int row = 0; row < rows; row++) {
+            builder.setLength(0);
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) builder.append('\t');
+                if (isIntColumn(i)) builder.append(((int[]) columns[i])[row]);
+                else builder.append(((double[]) columns[i])[row]);
+            }
+            out.append(builder.append('\n'));
+        }
+    }
+}
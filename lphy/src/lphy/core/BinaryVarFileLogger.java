@@ -0,0 +1,225 @@
+package lphy.core;
+
+import lphy.graphicalModel.Loggable;
+import lphy.graphicalModel.RandomVariable;
+import lphy.graphicalModel.RandomVariableLogger;
+import lphy.graphicalModel.Value;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs the same columns as {@link VarFileLogger}, to name.binlog in a binary format that is read back without
+ * parsing by {@link BinaryLogReader}.
+ * <p>
+ * All numbers are little-endian. The file starts with a header:
+ * <pre>
+ *   magic       8 bytes, "LPHYBLOG"
+ *   version     int
+ *   columns     int
+ *   then for each column, starting with the sample column:
+ *     type      byte, {@link #INT} or {@link #DOUBLE}
+ *     title     int byte length, then the title in UTF-8
+ * </pre>
+ * followed by blocks of replicates, each stored column by column:
+ * <pre>
+ *   rows        int
+ *   then for each column, rows values of 4 bytes (int) or 8 bytes (double)
+ * </pre>
+ * Integer values are logged as int columns and all other loggable values as double columns.
+ */
+public class BinaryVarFileLogger implements RandomVariableLogger {
+
+    static final byte[] MAGIC = "LPHYBLOG".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    // column types
+    static final byte INT = 0;
+    static final byte DOUBLE = 1;
+
+    String name;
+
+    final int flushBytes;
+    final long flushMillis;
+
+    // the open log file, from rep 0 until close
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long lastFlush;
+
+    // the column types, and the values of the current block, set at rep 0
+    private byte[] types;
+    private int[][] intColumns;
+    private double[][] doubleColumns;
+    private int blockRows;
+    private int rows;
+
+    public BinaryVarFileLogger(String name) {
+        this(name, LogFileChannel.DEFAULT_FLUSH_BYTES, LogFileChannel.DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * A logger that writes each block of replicates to name.binlog as it fills, so memory use does not grow with
+     * the number of replicates.
+     *
+     * @param flushBytes  the size of a block, which is written to the file whenever it fills.
+     * @param flushMillis the longest time a logged replicate waits in the block before being written, checked at each rep.
+     */
+    public BinaryVarFileLogger(String name, int flushBytes, long flushMillis) {
+        this.name = name;
+        this.flushBytes = flushBytes;
+        this.flushMillis = flushMillis;
+    }
+
+    public void log(int rep, List<RandomVariable<?>> variables) {
+
+        if (rep == 0) {
+            close();
+            start(variables);
+        }
+        if (channel == null) throw new IllegalStateException("Logging to " + name + ".binlog must start at rep 0");
+
+        intColumns[0][rows] = rep;
+        int column = 1;
+        for (RandomVariable variable : variables) {
+            Object value = variable.value();
+            Loggable loggable = VarFileLogger.loggableMap.get(value.getClass());
+            if (loggable != null) {
+                if (value instanceof Integer) {
+                    column = checkColumn(column, variable);
+                    intColumns[column++][rows] = (Integer) value;
+                } else if (value instanceof Double) {
+                    column = checkColumn(column, variable);
+                    doubleColumns[column++][rows] = (Double) value;
+                } else if (value instanceof Double[]) {
+                    for (Double x : (Double[]) value) {
+                        column = checkColumn(column, variable);
+                        doubleColumns[column++][rows] = x;
+                    }
+                } else {
+                    for (String logValue : loggable.getLogValues(variable)) {
+                        column = checkColumn(column, variable);
+                        doubleColumns[column++][rows] = Double.parseDouble(logValue);
+                    }
+                }
+            }
+        }
+        if (column != types.length) {
+            throw new IllegalStateException("Rep " + rep + " has " + (column - 1) + " log values but rep 0 had " + (types.length - 1));
+        }
+        rows += 1;
+
+        if (rows == blockRows || System.currentTimeMillis() - lastFlush >= flushMillis) writeBlock();
+    }
+
+    private int checkColumn(int column, RandomVariable variable) {
+        if (column >= types.length) {
+            throw new IllegalStateException("Variable " + variable.getId() + " has more log values than at rep 0");
+        }
+        return column;
+    }
+
+    private void start(List<RandomVariable<?>> variables) {
+
+        List<String> titles = new ArrayList<>();
+        List<Byte> columnTypes = new ArrayList<>();
+        titles.add("sample");
+        columnTypes.add(INT);
+        for (RandomVariable variable : variables) {
+            Loggable loggable = VarFileLogger.loggableMap.get(variable.value().getClass());
+            if (loggable != null) {
+                for (String title : loggable.getLogTitles(variable)) {
+                    titles.add(title);
+                    columnTypes.add(variable.value() instanceof Integer ? INT : DOUBLE);
+                }
+            }
+        }
+
+        types = new byte[titles.size()];
+        int rowBytes = 0;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columnTypes.get(i);
+            rowBytes += types[i] == INT ? Integer.BYTES : Double.BYTES;
+        }
+        blockRows = Math.max(1, (flushBytes - Integer.BYTES) / rowBytes);
+        intColumns = new int[types.length][];
+        doubleColumns = new double[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == INT) intColumns[i] = new int[blockRows];
+            else doubleColumns[i] = new double[blockRows];
+        }
+        rows = 0;
+
+        int headerBytes = MAGIC.length + 3 * Integer.BYTES;
+        byte[][] encodedTitles = new byte[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            encodedTitles[i] = titles.get(i).getBytes(StandardCharsets.UTF_8);
+            headerBytes += 1 + Integer.BYTES + encodedTitles[i].length;
+        }
+        buffer = ByteBuffer.allocateDirect(Math.max(headerBytes, Integer.BYTES + blockRows * rowBytes)).order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            // opened as a File rather than a Path, as in LogFileChannel
+            channel = new FileOutputStream(name + ".binlog").getChannel();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open " + name + ".binlog: " + e.getMessage(), e);
+        }
+
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(types.length);
+        for (int i = 0; i < types.length; i++) {
+            buffer.put(types[i]);
+            buffer.putInt(encodedTitles[i].length);
+            buffer.put(encodedTitles[i]);
+        }
+        writeBuffer();
+    }
+
+    private void writeBlock() {
+        if (rows == 0) return;
+        buffer.putInt(rows);
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == INT) {
+                buffer.asIntBuffer().put(intColumns[i], 0, rows);
+                buffer.position(buffer.position() + rows * Integer.BYTES);
+            } else {
+                buffer.asDoubleBuffer().put(doubleColumns[i], 0, rows);
+                buffer.position(buffer.position() + rows * Double.BYTES);
+            }
+        }
+        rows = 0;
+        writeBuffer();
+    }
+
+    private void writeBuffer() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            lastFlush = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to " + name + ".binlog: " + e.getMessage(), e);
+        }
+    }
+
+    public void close() {
+        if (channel != null) {
+            try {
+                writeBlock();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package lphy.core;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A log file written as text is logged, through a buffer that goes to the file whenever it fills
+ * and when a time limit has passed since the last write, so log lines are never all held in memory.
+ */
+class LogFileChannel {
+
+    // the default buffer size in bytes, and the default longest time in milliseconds a line waits in the buffer
+    static final int DEFAULT_FLUSH_BYTES = 1 << 16;
+    static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final long flushMillis;
+    private long lastFlush;
+
+    /**
+     * Creates the file, replacing any existing file of the same name.
+     */
+    LogFileChannel(String fileName, int flushBytes, long flushMillis) {
+        this.fileName = fileName;
+        this.flushMillis = flushMillis;
+        try {
+            // opened as a File rather than a Path, so that ids the platform cannot encode do not fail, as with PrintStream
+            channel = new FileOutputStream(fileName).getChannel();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open " + fileName + ": " + e.getMessage(), e);
+        }
+        buffer = ByteBuffer.allocateDirect(Math.max(flushBytes, 64));
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Encodes the text into the buffer as UTF-8, writing the buffer to the file each time it fills,
+     * and writes the buffer if flushMillis have passed since it was last written.
+     */
+    void write(CharSequence text) {
+        try {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isUnderflow()) break;
+                if (result.isOverflow()) writeBuffer();
+                else result.throwException();
+            }
+            encoder.flush(buffer);
+            if (System.currentTimeMillis() - lastFlush >= flushMillis) writeBuffer();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to " + fileName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes whatever is left in the buffer and closes the file.
+     */
+    void close() {
+        try {
+            writeBuffer();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -4,7 +4,6 @@ import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
 import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
-import lphy.graphicalModel.types.DoubleValue;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -59,50 +58,34 @@ public class PhyloBrownian implements GenerativeDistribution<Map<String, Double>
 
     public RandomVariable<Map<String, Double>> sample() {
 
-        SortedMap<String, Integer> idMap = new TreeMap<>();
-        fillIdMap(tree.value().getRoot(), idMap);
-
         Map<String, Double> tipValues = new TreeMap<>();
 
-        traverseTree(tree.value().getRoot(), y0, tipValues, diffusionRate.value(), idMap);
+        traverseTree(tree.value(), y0.value(), tipValues, diffusionRate.value());
 
         return new RandomVariable<>("x", tipValues, this);
     }
 
-    private void fillIdMap(TimeTreeNode node, SortedMap<String, Integer> idMap) {
-        if (node.isLeaf()) {
-            Integer i = idMap.get(node.getId());
-            if (i == null) {
-                int nextValue = 0;
-                for (Integer j : idMap.values()) {
-                    if (j >= nextValue) nextValue = j + 1;
-                }
-                idMap.put(node.getId(), nextValue);
-            }
-        } else {
-            for (TimeTreeNode child : node.getChildren()) {
-                fillIdMap(child, idMap);
+    private void traverseTree(TimeTree tree, double rootState, Map<String, Double> tipValues, double diffusionRate) {
+        double[] nodeStates = new double[tree.getNodeCount()];
+
+        // parents come before their children in pre-order, so each parent's state is set before it is used
+        for (int nodeIndex : tree.getPreorder()) {
+            TimeTreeNode node = tree.getNodeByIndex(nodeIndex);
+            if (node.isRoot()) {
+                nodeStates[nodeIndex] = rootState;
+            } else {
+                TimeTreeNode parent = node.getParent();
+                double variance = diffusionRate * (parent.getAge() - node.getAge());
+                nodeStates[nodeIndex] = sampleNewState(nodeStates[parent.getIndex()], variance, nodeIndex);
             }
-        }
-    }
-
-    private void traverseTree(TimeTreeNode node, Value<Double> nodeState, Map<String, Double> tipValues, double diffusionRate, Map<String, Integer> idMap) {
-        if (node.isLeaf()) {
-            tipValues.put(node.getId(), nodeState.value());
-        } else {
-            for (TimeTreeNode child : node.getChildren()) {
-
-                double variance = diffusionRate * (node.getAge() - child.getAge());
-
-                double newState = sampleNewState(nodeState.value(), variance, child.getIndex());
-
-                traverseTree(child, new DoubleValue("x", newState), tipValues, diffusionRate, idMap);
+            if (node.isLeaf()) {
+                tipValues.put(node.getId(), nodeStates[nodeIndex]);
             }
         }
     }
 
     protected double sampleNewState(double initialState, double time, int nodeIndex) {
-        NormalDistribution distribution = new NormalDistribution(initialState, Math.sqrt(time*diffusionRate.value()));
+        NormalDistribution distribution = new NormalDistribution(random, initialState, Math.sqrt(time*diffusionRate.value()));
         return handleBoundaries(distribution.sample());
     }
 
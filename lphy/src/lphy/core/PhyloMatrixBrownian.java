@@ -96,7 +96,7 @@ public class PhyloMatrixBrownian implements GenerativeDistribution<Map<String, D
                 double variance = diffusionRate * (node.getAge() - child.getAge());
 
                 //TODO I don't want to do a new on every branch! Should be made efficient :)
-                NormalDistribution distribution = new NormalDistribution(nodeState.value(), Math.sqrt(variance));
+                NormalDistribution distribution = new NormalDistribution(random, nodeState.value(), Math.sqrt(variance));
 
                 double newState = distribution.sample();
 
@@ -112,7 +112,7 @@ public class PhyloMultivariateBrownian implements GenerativeDistribution<Map<Str
             }
         }
 
-        MultivariateNormalDistribution mvn = new MultivariateNormalDistribution(means, covariances);
+        MultivariateNormalDistribution mvn = new MultivariateNormalDistribution(random, means, covariances);
         return handleBoundaries(mvn.sample());
 
     }
@@ -1,5 +1,6 @@
 package lphy.core;
 
+import lphy.core.distributions.Utils;
 import lphy.evolution.tree.TimeTree;
 import lphy.graphicalModel.ParameterInfo;
 import lphy.graphicalModel.Value;
@@ -83,7 +84,7 @@ public class PhyloOU extends PhyloBrownian {
 
         double variance = v * (1.0 - Math.exp(-2.0*a*time));
 
-        NormalDistribution distribution = new NormalDistribution(mean, Math.sqrt(variance));
+        NormalDistribution distribution = new NormalDistribution(Utils.getRandom(), mean, Math.sqrt(variance));
         return handleBoundaries(distribution.sample());
     }
 }
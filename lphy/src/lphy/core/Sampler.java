@@ -1,19 +1,44 @@
 package lphy.core;
 
 import lphy.app.GraphicalLPhyParser;
+import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
-import lphy.utils.LoggerUtils;
+import lphy.parser.REPL;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Sampler {
 
+    // the largest number of replicates handed to a parallel worker at once
+    static final int MAX_REPLICATE_BLOCK_SIZE = 64;
+
     GraphicalLPhyParser parser;
 
+    // the compiled model, and the parser version it was compiled from
+    SamplingPlan plan;
+    int planVersion;
+
     public Sampler(GraphicalLPhyParser parser) {
         this.parser = parser;
     }
 
+    /**
+     * @return the sampling plan of the current model, re-compiled if the model has been parsed into or cleared since it was last used.
+     */
+    private SamplingPlan getPlan() {
+        if (plan == null || planVersion != parser.getVersion()) {
+            plan = new SamplingPlan(parser);
+            planVersion = parser.getVersion();
+        }
+        return plan;
+    }
+
     /**
      * Sample the current model
      *
@@ -22,34 +47,19 @@ public class Sampler {
      */
     public void sample(int reps, List<RandomVariableLogger> loggers) {
 
-        for (int i = 0; i < reps; i++) {
-            Set<String> sampled = new TreeSet<>();
-            Set<Value<?>> sinks = parser.getSinks();
-            for (RandomVariable<?> var : LPhyParser.Utils.getAllVariablesFromSinks(parser)) {
-                parser.getDictionary().remove(var.getId());
-            }
-
-            for (Value<?> value : sinks) {
+        SamplingPlan plan = getPlan();
 
-                if (value.isRandom()) {
-                    Value randomValue;
-                    if (value.getGenerator() != null) {
-                        randomValue = sampleAll(value.getGenerator(), sampled);
-                    } else throw new RuntimeException();
-                    randomValue.setId(value.getId());
-                    addValueToDictionary(randomValue);
-                }
-            }
+        for (int i = 0; i < reps; i++) {
+            plan.sample();
 
             if (loggers != null) {
-                List<RandomVariable<?>> variables = LPhyParser.Utils.getAllVariablesFromSinks(parser);
+                List<RandomVariable<?>> variables = plan.getRandomVariables();
                 for (RandomVariableLogger logger : loggers) {
                     logger.log(i, variables);
                 }
             }
         }
         if (loggers != null) {
-            List<RandomVariable<?>> variables = LPhyParser.Utils.getAllVariablesFromSinks(parser);
             for (RandomVariableLogger logger : loggers) {
                 logger.close();
             }
@@ -57,59 +67,121 @@ public class Sampler {
         parser.notifyListeners();
     }
 
-    private Value sampleAll(Generator generator, Set<String> sampled) {
-
-        for (Map.Entry<String, Value> e : getNewlySampledParams(generator, sampled).entrySet()) {
-            generator.setInput(e.getKey(), e.getValue());
-            if (!e.getValue().isAnonymous()) sampled.add(e.getValue().getId());
-        }
-
-        return generator.generate();
+    /**
+     * Re-sample only the values that depend on constants changed with Value.setValue since the last
+     * sample, keeping the current values of all other random variables.
+     */
+    public void resample() {
+        getPlan().resample();
+        parser.notifyListeners();
     }
 
-    private Map<String, Value> getNewlySampledParams(Generator generator, Set<String> sampled) {
-
-        LoggerUtils.log.fine("getNewlySampledParams(" + generator.getName() + ")");
-        Map<String, Value> params = generator.getParams();
+    /**
+     * Sample the current model in parallel. Each worker thread samples replicates from its own copy of the
+     * model graph (re-parsed from the model source, with any constants changed by Value.setValue copied over),
+     * and each replicate uses its own random stream seeded from the master seed, so the results do not depend
+     * on the number of threads.
+     * Sampled variables are passed to the loggers in replicate order on the calling thread. Afterwards the
+     * last replicate is sampled again from its seed on the calling thread, so that the parser holds its values.
+     *
+     * @param reps    the number of times to sample
+     * @param loggers the loggers to log to
+     * @param threads the number of worker threads
+     * @param seed    the master seed from which the replicate seeds are drawn
+     */
+    public void sample(int reps, List<RandomVariableLogger> loggers, int threads, long seed) {
 
-        Map<String, Value> newlySampledParams = new TreeMap<>();
-        for (Map.Entry<String, Value> e : params.entrySet()) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1, but was " + threads);
 
-            Value val = e.getValue();
+        // draw replicate seeds in replicate order
+        RandomGenerator master = new MersenneTwister(seed);
+        long[] seeds = new long[reps];
+        for (int i = 0; i < reps; i++) {
+            seeds[i] = master.nextLong();
+        }
 
-            if (val.isRandom()) {
-                if (val.isAnonymous() || !sampled.contains(val.getId())) {
-                    // needs to be sampled
-                    Value nv = sampleAll(val.getGenerator(), sampled);
-                    nv.setId(val.getId());
-                    newlySampledParams.put(e.getKey(), nv);
-                    addValueToDictionary(nv);
-                    if (!val.isAnonymous()) sampled.add(val.getId());
+        SamplingPlan plan = getPlan();
+        List<String> lines = new ArrayList<>(parser.getLines());
+        ThreadLocal<SamplingPlan> workerPlan = new ThreadLocal<>();
+        int blockSize = Math.max(1, Math.min(MAX_REPLICATE_BLOCK_SIZE, reps / (threads * 4)));
+        int blockCount = (reps + blockSize - 1) / blockSize;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<List<RandomVariable<?>>>>> pending = new ArrayDeque<>();
+        try {
+            int nextBlock = 0;
+            for (int b = 0; b < blockCount; b++) {
+                // keep a bounded number of blocks in flight so memory does not grow with reps
+                while (nextBlock < blockCount && pending.size() < threads * 2) {
+                    int start = nextBlock * blockSize;
+                    int end = Math.min(reps, start + blockSize);
+                    pending.add(executor.submit(() -> sampleBlock(workerPlan, plan, lines, seeds, start, end)));
+                    nextBlock += 1;
+                }
 
-                } else {
-                    // already been sampled
-                    String id = e.getValue().getId();
-                    newlySampledParams.put(e.getKey(), parser.getDictionary().get(id));
+                List<List<RandomVariable<?>>> block = pending.remove().get();
+                if (loggers != null) {
+                    for (int i = 0; i < block.size(); i++) {
+                        for (RandomVariableLogger logger : loggers) {
+                            logger.log(b * blockSize + i, block.get(i));
+                        }
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Parallel sampling was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Parallel sampling failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-        return newlySampledParams;
-    }
 
-    private void addValueToDictionary(Value value) {
+        if (loggers != null) {
+            for (RandomVariableLogger logger : loggers) {
+                logger.close();
+            }
+        }
 
-        LoggerUtils.log.fine("addValueToDictionary(" + value + ")");
+        // the workers sampled their own copies of the model. The parsed generators draw from the shared
+        // random generator, which afterwards is seeded from its own stream rather than left at the replicate's seed.
+        if (reps > 0) {
+            RandomGenerator random = Utils.getRandom();
+            long next = random.nextLong();
+            random.setSeed(seeds[reps - 1]);
+            try {
+                plan.sample();
+            } finally {
+                random.setSeed(next);
+            }
+        }
+        parser.notifyListeners();
+    }
 
-        if (!value.isAnonymous()) {
-            String id = value.getId();
-            Value oldValue = parser.getDictionary().get(id);
-            // Can't change the name as this will mess with updating of expression nodes!
-//            if (oldValue != null) {
-//                oldValue.setId(id + ".old");
-//            }
-            LoggerUtils.log.fine("  parser.getDictionary().put(" + id + ":" + value + ")");
+    private static List<List<RandomVariable<?>>> sampleBlock(ThreadLocal<SamplingPlan> workerPlan, SamplingPlan modelPlan,
+                                                             List<String> lines, long[] seeds, int start, int end) {
+
+        SamplingPlan plan = workerPlan.get();
+        if (plan == null) {
+            // the generators capture their random generator when the model is parsed,
+            // so the worker's generator must be in place before parsing its copy of the model.
+            Utils.setThreadRandom(new MersenneTwister());
+            GraphicalLPhyParser workerParser = new GraphicalLPhyParser(new REPL());
+            for (String line : lines) {
+                workerParser.parse(line);
+            }
+            plan = new SamplingPlan(workerParser);
+            plan.copyChangedConstants(modelPlan);
+            workerPlan.set(plan);
+        }
 
-            parser.getDictionary().put(id, value);
+        RandomGenerator random = Utils.getRandom();
+        List<List<RandomVariable<?>>> block = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            random.setSeed(seeds[i]);
+            plan.sample();
+            block.add(plan.getRandomVariables());
         }
+        return block;
     }
 }
@@ -0,0 +1,219 @@
+package lphy.core;
+
+import lphy.graphicalModel.Generator;
+import lphy.graphicalModel.RandomVariable;
+import lphy.graphicalModel.Value;
+
+import java.util.*;
+
+/**
+ * The generated part of a model compiled into a topologically ordered list of generator slots.
+ * Each slot refers to its generated inputs by slot index, so sampling a replicate is a single pass
+ * over the slots, with no walk of the graphical model and no per-replicate maps or id lookups.
+ * Named values are re-sampled once per replicate, anonymous values once per use, as in the
+ * recursive sampler this replaces.
+ * The constant inputs of each slot are kept too, so that after constants have been changed with
+ * Value.setValue, only the slots downstream of them need to be re-generated.
+ */
+public class SamplingPlan {
+
+    LPhyParser parser;
+
+    Generator<?>[] generators;
+    String[] ids;
+    boolean[] random;
+    String[][] inputNames;
+    int[][] inputSlots;
+    Value<?>[][] constantInputs;
+
+    Value<?>[] values;
+
+    // the slots of the random variables in the order LPhyParser.Utils.getAllVariablesFromSinks lists them
+    int[] variableSlots;
+
+    public SamplingPlan(LPhyParser parser) {
+        this.parser = parser;
+
+        List<Value<?>> valueList = new ArrayList<>();
+        List<String[]> inputNameList = new ArrayList<>();
+        List<int[]> inputSlotList = new ArrayList<>();
+        List<Value<?>[]> constantInputList = new ArrayList<>();
+        Map<String, Integer> namedSlots = new HashMap<>();
+
+        for (Value<?> value : parser.getSinks()) {
+            if (value.isRandom() && value.getGenerator() == null) {
+                throw new RuntimeException("Random value " + value.getId() + " has no generator");
+            }
+            if (value.getGenerator() != null) {
+                compile(value, valueList, inputNameList, inputSlotList, constantInputList, namedSlots);
+            }
+        }
+
+        int slotCount = valueList.size();
+        generators = new Generator<?>[slotCount];
+        ids = new String[slotCount];
+        random = new boolean[slotCount];
+        values = valueList.toArray(new Value<?>[0]);
+        for (int i = 0; i < slotCount; i++) {
+            generators[i] = values[i].getGenerator();
+            ids[i] = values[i].isAnonymous() ? null : values[i].getId();
+            random[i] = values[i].isRandom();
+        }
+        inputNames = inputNameList.toArray(new String[0][]);
+        inputSlots = inputSlotList.toArray(new int[0][]);
+        constantInputs = constantInputList.toArray(new Value<?>[0][]);
+    }
+
+    private int compile(Value<?> value, List<Value<?>> valueList, List<String[]> inputNameList, List<int[]> inputSlotList,
+                        List<Value<?>[]> constantInputList, Map<String, Integer> namedSlots) {
+
+        List<String> names = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Value<?>> constants = new ArrayList<>();
+
+        @SuppressWarnings("rawtypes") // getParams() returns raw values
+        Map<String, Value> params = value.getGenerator().getParams();
+        for (String name : params.keySet()) {
+            Value<?> val = params.get(name);
+
+            if (val == null) continue;
+
+            if (val.getGenerator() != null) {
+                Integer slot = val.isAnonymous() ? null : namedSlots.get(val.getId());
+                if (slot == null) {
+                    slot = compile(val, valueList, inputNameList, inputSlotList, constantInputList, namedSlots);
+                }
+                names.add(name);
+                slots.add(slot);
+            } else constants.add(val);
+        }
+
+        int slot = valueList.size();
+        valueList.add(value);
+        inputNameList.add(names.toArray(new String[0]));
+        inputSlotList.add(slots.stream().mapToInt(Integer::intValue).toArray());
+        constantInputList.add(constants.toArray(new Value<?>[0]));
+        if (!value.isAnonymous()) namedSlots.put(value.getId(), slot);
+        return slot;
+    }
+
+    /**
+     * Samples one replicate of the model, replacing the named random values in the parser's dictionary.
+     * Deterministic values that depend on changed constants are also re-computed.
+     */
+    public void sample() {
+        generate(true);
+    }
+
+    /**
+     * Re-generates only the values downstream of constants that have been changed with Value.setValue
+     * since the last call, leaving all other random values as they are.
+     */
+    public void resample() {
+        generate(false);
+    }
+
+    private void generate(boolean all) {
+
+        Map<String, Value<?>> dictionary = parser.getDictionary();
+        boolean[] changed = new boolean[generators.length];
+
+        for (int i = 0; i < generators.length; i++) {
+
+            boolean regenerate = (all && random[i]) || anyDirty(constantInputs[i]) || anyChanged(inputSlots[i], changed);
+            if (!regenerate) continue;
+
+            Generator<?> generator = generators[i];
+            String[] names = inputNames[i];
+            int[] slots = inputSlots[i];
+            for (int j = 0; j < names.length; j++) {
+                generator.setInput(names[j], values[slots[j]]);
+            }
+
+            Value<?> value = generator.generate();
+            if (ids[i] != null) {
+                value.setId(ids[i]);
+                dictionary.put(ids[i], value);
+            }
+            values[i] = value;
+            changed[i] = true;
+        }
+
+        for (Value<?>[] constants : constantInputs) {
+            for (Value<?> constant : constants) {
+                constant.setDirty(false);
+            }
+        }
+    }
+
+    /**
+     * Gives the constants of this plan the values of the constants of a plan compiled from the same model lines
+     * that have since been changed with Value.setValue, so that both plans sample the same model.
+     */
+    void copyChangedConstants(SamplingPlan source) {
+        if (source.generators.length != generators.length) {
+            throw new IllegalStateException("The sampling plans were not compiled from the same model");
+        }
+        for (int i = 0; i < generators.length; i++) {
+            if (source.generators[i].getClass() != generators[i].getClass() ||
+                    source.constantInputs[i].length != constantInputs[i].length) {
+                throw new IllegalStateException("The sampling plans were not compiled from the same model");
+            }
+            for (int j = 0; j < constantInputs[i].length; j++) {
+                if (source.constantInputs[i][j].getVersion() > 0) copyValue(source.constantInputs[i][j], constantInputs[i][j]);
+            }
+        }
+    }
+
+    // the slots and their generators match, so the constants have the same type
+    @SuppressWarnings("unchecked")
+    private static <T> void copyValue(Value<?> from, Value<T> to) {
+        to.setValue((T) from.value());
+    }
+
+    private static boolean anyDirty(Value<?>[] constants) {
+        for (Value<?> constant : constants) {
+            if (constant.isDirty()) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyChanged(int[] slots, boolean[] changed) {
+        for (int slot : slots) {
+            if (changed[slot]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the random variables of the last sampled replicate, in the order given by
+     * LPhyParser.Utils.getAllVariablesFromSinks.
+     */
+    public List<RandomVariable<?>> getRandomVariables() {
+
+        if (variableSlots == null) {
+            List<RandomVariable<?>> variables = LPhyParser.Utils.getAllVariablesFromSinks(parser);
+
+            Map<Value<?>, Integer> slotOfValue = new IdentityHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                slotOfValue.put(values[i], i);
+            }
+
+            int[] slots = new int[variables.size()];
+            for (int i = 0; i < slots.length; i++) {
+                Integer slot = slotOfValue.get(variables.get(i));
+                // a random variable outside the plan; fall back to walking the graph every time
+                if (slot == null) return variables;
+                slots[i] = slot;
+            }
+            variableSlots = slots;
+            return variables;
+        }
+
+        List<RandomVariable<?>> variables = new ArrayList<>(variableSlots.length);
+        for (int slot : variableSlots) {
+            variables.add((RandomVariable<?>) values[slot]);
+        }
+        return variables;
+    }
+}
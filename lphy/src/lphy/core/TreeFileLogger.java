@@ -3,9 +3,8 @@ package lphy.core;
 import lphy.evolution.tree.TimeTree;
 import lphy.graphicalModel.RandomVariable;
 import lphy.graphicalModel.RandomVariableLogger;
-import lphy.nexus.NexusWriter;
+import lphy.nexus.TaxaBlock;
 
-import java.io.PrintStream;
 import java.util.*;
 
 /**
@@ -15,36 +14,74 @@ public class TreeFileLogger implements RandomVariableLogger {
 
     String name;
 
-    Map<String, List<TimeTree>> trees;
+    final int flushBytes;
+    final long flushMillis;
+
+    // an open nexus file and the number of trees written to it, for each tree variable, from rep 0 until close
+    Map<String, LogFileChannel> files;
+    Map<String, Integer> treeCounts;
+
+    // reused for every tree
+    final StringBuilder builder = new StringBuilder();
 
     public TreeFileLogger(String name) {
+        this(name, LogFileChannel.DEFAULT_FLUSH_BYTES, LogFileChannel.DEFAULT_FLUSH_MILLIS);
+    }
 
+    /**
+     * A logger that writes each tree variable to its own nexus file, name_id.trees, as each tree is logged,
+     * so trees do not have to be kept until the end of the run.
+     *
+     * @param flushBytes  the size of the write buffer of each file, which is written to the file whenever it fills.
+     * @param flushMillis the longest time a logged tree waits in the buffer before being written, checked at each rep.
+     */
+    public TreeFileLogger(String name, int flushBytes, long flushMillis) {
         this.name = name;
+        this.flushBytes = flushBytes;
+        this.flushMillis = flushMillis;
     }
 
     public void log(int rep, List<RandomVariable<?>> variables) {
         List<RandomVariable<TimeTree>> treeVariables = getTreeVariables(variables);
 
         if (rep == 0) {
-            trees = new TreeMap<>();
+            close();
+            files = new TreeMap<>();
+            treeCounts = new TreeMap<>();
             for (RandomVariable<TimeTree> tv : treeVariables) {
-                trees.put(tv.getId(), new ArrayList<TimeTree>());
+                LogFileChannel file = new LogFileChannel(name + "_" + tv.getId() + ".trees", flushBytes, flushMillis);
+
+                // the taxa are those of the first tree
+                file.write("#NEXUS\n\n" + new TaxaBlock(tv.value().getTaxaNames()) + "\nbegin trees;\n");
+                files.put(tv.getId(), file);
+                treeCounts.put(tv.getId(), 0);
             }
         }
+        if (files == null) throw new IllegalStateException("Logging to " + name + " tree files must start at rep 0");
 
         for (RandomVariable<TimeTree> v : treeVariables) {
-            trees.get(v.getId()).add(v.value());
+            LogFileChannel file = files.get(v.getId());
+            int treeCount = treeCounts.get(v.getId());
+
+            builder.setLength(0);
+            builder.append("\ttree TREE_").append(treeCount).append(" = [&R] ");
+            v.value().appendNewick(builder, true);
+            // the semicolon ends the line below
+            if (builder.charAt(builder.length() - 1) == ';') builder.setLength(builder.length() - 1);
+            builder.append(";\n");
+
+            file.write(builder);
+            treeCounts.put(v.getId(), treeCount + 1);
         }
     }
 
     public void close() {
-        trees.forEach((key, treeList) -> {
-            try {
-                NexusWriter.write(null, treeList, new PrintStream(name + "_" + key + ".trees"));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        if (files == null) return;
+        files.forEach((key, file) -> {
+            file.write("end;\n");
+            file.close();
         });
+        files = null;
     }
 
     private List<RandomVariable<TimeTree>> getTreeVariables(List<RandomVariable<?>> variables) {
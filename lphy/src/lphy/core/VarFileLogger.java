@@ -5,10 +5,6 @@ import lphy.graphicalModel.RandomVariable;
 import lphy.graphicalModel.RandomVariableLogger;
 import lphy.graphicalModel.Value;
 
-import javax.swing.filechooser.FileSystemView;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.*;
 
 /**
@@ -28,6 +24,10 @@ public class VarFileLogger implements RandomVariableLogger {
             public String[] getLogValues(Value<Integer> value) {
                 return new String[]{value.value().toString()};
             }
+
+            public void appendLogValues(Value<Integer> value, StringBuilder builder) {
+                builder.append('\t').append(value.value().intValue());
+            }
         });
 
         loggableMap.put(Double.class, new Loggable<Double>() {
@@ -39,6 +39,10 @@ public class VarFileLogger implements RandomVariableLogger {
             public String[] getLogValues(Value<Double> value) {
                 return new String[]{value.value().toString()};
             }
+
+            public void appendLogValues(Value<Double> value, StringBuilder builder) {
+                builder.append('\t').append(value.value().doubleValue());
+            }
         });
 
         loggableMap.put(Double[].class, new Loggable<Double[]>() {
@@ -58,23 +62,49 @@ public class VarFileLogger implements RandomVariableLogger {
                 }
                 return vals;
             }
+
+            public void appendLogValues(Value<Double[]> value, StringBuilder builder) {
+                for (Double x : value.value()) {
+                    builder.append('\t').append(x.doubleValue());
+                }
+            }
         });
     }
 
     String name;
 
-    List<String> lines;
+    final int flushBytes;
+    final long flushMillis;
+
+    // the open log file, from rep 0 until close
+    LogFileChannel file;
+
+    // reused for every line
+    final StringBuilder builder = new StringBuilder();
 
     public VarFileLogger(String name) {
+        this(name, LogFileChannel.DEFAULT_FLUSH_BYTES, LogFileChannel.DEFAULT_FLUSH_MILLIS);
+    }
 
+    /**
+     * A logger that writes each replicate to name.log as it is logged, so memory use does not grow with the number
+     * of replicates and the lines logged so far are on disk if the run is stopped.
+     *
+     * @param flushBytes  the size of the write buffer, which is written to the file whenever it fills.
+     * @param flushMillis the longest time a logged line waits in the buffer before being written, checked at each rep.
+     */
+    public VarFileLogger(String name, int flushBytes, long flushMillis) {
         this.name = name;
+        this.flushBytes = flushBytes;
+        this.flushMillis = flushMillis;
     }
 
     public void log(int rep, List<RandomVariable<?>> variables) {
-        StringBuilder builder = new StringBuilder();
+        builder.setLength(0);
 
         if (rep == 0) {
-            lines = new ArrayList<>();
+            close();
+            file = new LogFileChannel(name + ".log", flushBytes, flushMillis);
             // start with titles
             builder.append("sample");
             for (RandomVariable variable : variables) {
@@ -89,32 +119,24 @@ public class VarFileLogger implements RandomVariableLogger {
             builder.append("\n");
 
         }
+        if (file == null) throw new IllegalStateException("Logging to " + name + ".log must start at rep 0");
+
         builder.append(rep);
         for (RandomVariable variable : variables) {
             Loggable loggable = VarFileLogger.loggableMap.get(variable.value().getClass());
             if (loggable != null) {
-                for (String logValue : loggable.getLogValues(variable)) {
-                    builder.append("\t");
-                    builder.append(logValue);
-                }
+                loggable.appendLogValues(variable, builder);
             }
         }
         builder.append("\n");
 
-        lines.add(builder.toString());
+        file.write(builder);
     }
 
     public void close() {
-
-        try {
-            FileWriter writer = new FileWriter(name + ".log");
-            for (String line : lines) {
-                writer.write(line);
-            }
-            writer.flush();
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (file != null) {
+            file.close();
+            file = null;
         }
     }
 }
@@ -0,0 +1,80 @@
+package lphy.core.distributions;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Walker's alias table for drawing from a discrete distribution over the integers 0 to K-1 in constant time.
+ * The table is built once in O(K) using Vose's method. The probabilities are normalised by their sum,
+ * so rounding error that leaves them summing to slightly more or less than 1.0 is harmless.
+ */
+public class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    public AliasTable(double[] p) {
+        int n = p.length;
+        probability = new double[n];
+        alias = new int[n];
+
+        double sum = 0.0;
+        for (double x : p) sum += x;
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = p[i] * n / sum;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // whatever is left over is 1.0 up to rounding error
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            probability[l] = 1.0;
+            alias[l] = l;
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            probability[s] = 1.0;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * @param U a uniform random number in [0, 1).
+     * @return the sampled state.
+     */
+    public int sample(double U) {
+        double x = U * probability.length;
+        int i = (int) x;
+        if (i >= probability.length) i = probability.length - 1;
+        return (x - i < probability[i]) ? i : alias[i];
+    }
+
+    public int sample(RandomGenerator random) {
+        return sample(random.nextDouble());
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
@@ -28,7 +28,7 @@ public class Beta implements GenerativeDistribution1D<Double> {
     @GeneratorInfo(name="Beta", description="The beta probability distribution.")
     public RandomVariable<Double> sample() {
 
-        BetaDistribution betaDistribution = new BetaDistribution(alpha.value(), beta.value());
+        BetaDistribution betaDistribution = new BetaDistribution(Utils.getRandom(), alpha.value(), beta.value());
 
         double randomVariable = betaDistribution.sample();
 
@@ -36,7 +36,7 @@ public class Beta implements GenerativeDistribution1D<Double> {
     }
 
     public double logDensity(Double d) {
-        BetaDistribution betaDistribution = new BetaDistribution(alpha.value(), beta.value());
+        BetaDistribution betaDistribution = new BetaDistribution(Utils.getRandom(), alpha.value(), beta.value());
         return betaDistribution.logDensity(d);
     }
 
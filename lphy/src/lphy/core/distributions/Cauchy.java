@@ -72,7 +72,7 @@ public class Cauchy implements GenerativeDistribution<Double> {
         // in case the scale is type integer
         double sc = ((Number) scale.value()).doubleValue();
 
-        cauchyDistribution = new CauchyDistribution(mean, sc);
+        cauchyDistribution = new CauchyDistribution(random, mean, sc);
     }
 
     public String toString() {
@@ -81,14 +81,28 @@ public class DiscretizedGamma implements GenerativeDistribution<Double[]> {
         // in case the shape is type integer
         double sh = ((Number) shape.value()).doubleValue();
 
-        gammaDistribution = new GammaDistribution(sh, 1.0/sh);
+        gammaDistribution = new GammaDistribution(Utils.getRandom(), sh, 1.0/sh);
 
-        rates = new double[ncat.value()];
+        rates = getCategoryRates(gammaDistribution, ncat.value());
+    }
+
+    /**
+     * @return the rate of each of the ncat categories, being the median of each equal-probability bin of the gamma distribution,
+     * scaled so that the rates have mean 1.
+     */
+    public static double[] getCategoryRates(GammaDistribution gammaDistribution, int ncat) {
+        double[] rates = new double[ncat];
 
+        double sum = 0.0;
         for (int i = 0; i < rates.length; i++) {
             double q = (2.0 * i + 1.0) / (2.0 * rates.length);
             rates[i] = gammaDistribution.inverseCumulativeProbability(q);
+            sum += rates[i];
+        }
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] *= rates.length / sum;
         }
+        return rates;
     }
 
     public String toString() {
@@ -0,0 +1,74 @@
+package lphy.core.distributions;
+
+import lphy.graphicalModel.*;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The category form of the discretized gamma distribution: a category index for each site rather than a rate.
+ * Paired with discretizedGammaRates this gives the same site rates as G, but lets PhyloCTMC compute
+ * transition probabilities once per category rather than once per site.
+ */
+public class DiscretizedGammaCategories implements GenerativeDistribution<Integer[]> {
+
+    private final String ncatParamName;
+    private final String repsParamName;
+    private Value<Integer> ncat;
+    private Value<Integer> reps;
+
+    public DiscretizedGammaCategories(@ParameterInfo(name = "ncat", description = "the number of bins in the discretization.", type=Integer.class) Value<Integer> ncat,
+                                      @ParameterInfo(name = "reps", description = "the number of iid samples to produce.", type=Integer.class, optional = true) Value<Integer> reps) {
+
+        this.ncat = ncat;
+        if (ncat == null) throw new IllegalArgumentException("The ncat value can't be null!");
+        this.reps = reps;
+
+        ncatParamName = getParamName(0);
+        repsParamName = getParamName(1);
+    }
+
+    @GeneratorInfo(name="GCategories", description = "The rate category of each site under a discretized gamma distribution, " +
+            "each of the ncat categories being equally likely. The rates of the categories are given by discretizedGammaRates.")
+    public RandomVariable<Integer[]> sample() {
+
+        int n = 1;
+        if (reps != null) n = reps.value();
+
+        Integer[] x = new Integer[n];
+        for (int i = 0; i < x.length; i++){
+            x[i] = Utils.getRandom().nextInt(ncat.value());
+        }
+        return new RandomVariable<>("x", x, this);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public Map<String, Value> getParams() {
+        SortedMap<String, Value> map = new TreeMap<>();
+        map.put(ncatParamName, ncat);
+        if (reps != null) map.put(repsParamName, reps);
+        return map;
+    }
+
+    @Override
+    public void setParam(String paramName, Value<?> value) {
+
+        if (paramName.equals(ncatParamName)) ncat = integerValue(paramName, value);
+        else if (paramName.equals(repsParamName)) reps = integerValue(paramName, value);
+        else throw new RuntimeException("Unrecognised parameter name: " + paramName);
+    }
+
+    // both parameters are integers, which is checked before the cast
+    @SuppressWarnings("unchecked")
+    private static Value<Integer> integerValue(String paramName, Value<?> value) {
+        if (!(value.value() instanceof Integer)) {
+            throw new IllegalArgumentException(paramName + " must be an integer, but was " + value.value());
+        }
+        return (Value<Integer>) value;
+    }
+
+    public String toString() {
+        return getName();
+    }
+}
@@ -35,11 +35,11 @@ public class ExpMarkovChain implements GenerativeDistribution<Double[]> {
     @GeneratorInfo(name="ExpMarkovChain", description="A chain of random variables. X[0] ~ Exp(mean=initialMean); X[i+1] ~ Exp(mean=X[i])")
     public RandomVariable<Double[]> sample() {
 
-        ExponentialDistribution exp = new ExponentialDistribution(initialMean.value());
+        ExponentialDistribution exp = new ExponentialDistribution(random, initialMean.value());
         Double[] result = new Double[n.value()];
         for (int i = 0; i < result.length; i++) {
             result[i] = exp.sample();
-            exp = new ExponentialDistribution(result[i]);
+            exp = new ExponentialDistribution(random, result[i]);
         }
 
         return new RandomVariable<>("x", result, this);
@@ -48,10 +48,10 @@ public class ExpMarkovChain implements GenerativeDistribution<Double[]> {
     public double logDensity(Double[] x) {
 
         double logDensity = 0;
-        ExponentialDistribution exp = new ExponentialDistribution(initialMean.value());
+        ExponentialDistribution exp = new ExponentialDistribution(random, initialMean.value());
         for (int i = 0; i < x.length; i++) {
             logDensity += exp.logDensity(x[i]);
-            exp = new ExponentialDistribution(x[i]);
+            exp = new ExponentialDistribution(random, x[i]);
         }
         return logDensity;
     }
@@ -41,7 +41,7 @@ public class ExpMulti implements GenerativeDistribution<Double[]> {
 
     @Override
     public double logDensity(Double[] x) {
-        ExponentialDistribution exp = new ExponentialDistribution(mean.value());
+        ExponentialDistribution exp = new ExponentialDistribution(random, mean.value());
         double logP = exp.logDensity(x[0]);
         for (int i = 1; i < x.length; i++) {
             logP += exp.logDensity(x[i]);
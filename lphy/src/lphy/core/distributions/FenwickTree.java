@@ -0,0 +1,108 @@
+package lphy.core.distributions;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * A Fenwick (binary indexed) tree of non-negative weights over the integers 0 to K-1, for drawing an index
+ * with probability proportional to its weight when the weights change between draws.
+ * Changing a weight, finding the total and drawing an index all take O(log K).
+ * The partial sums are rebuilt from the weights after every K changes, so rounding errors from repeated
+ * updates do not build up, and the total is exactly zero when all the weights are.
+ */
+public class FenwickTree {
+
+    private final double[] weights;
+    // tree[i] holds the sum of the weights of indices i-(i&-i) to i-1
+    private final double[] tree;
+    private final int highestBit;
+    // the number of non-zero weights, and the number of changes since the partial sums were rebuilt
+    private int nonZeroCount = 0;
+    private int changeCount = 0;
+
+    public FenwickTree(int size) {
+        weights = new double[size];
+        tree = new double[size + 1];
+        int bit = 1;
+        while (bit * 2 <= size) bit *= 2;
+        highestBit = bit;
+    }
+
+    public int size() {
+        return weights.length;
+    }
+
+    public double get(int i) {
+        return weights[i];
+    }
+
+    public void set(int i, double weight) {
+        if (weight < 0.0) throw new IllegalArgumentException("Weights must be non-negative, but weight " + i + " is " + weight);
+        if (weights[i] != 0.0) nonZeroCount -= 1;
+        if (weight != 0.0) nonZeroCount += 1;
+        double delta = weight - weights[i];
+        weights[i] = weight;
+
+        changeCount += 1;
+        if (changeCount >= weights.length) {
+            rebuild();
+        } else {
+            for (int j = i + 1; j < tree.length; j += j & -j) {
+                tree[j] += delta;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the partial sums from the weights, in O(K).
+     */
+    private void rebuild() {
+        for (int j = 1; j < tree.length; j++) {
+            tree[j] = weights[j - 1];
+        }
+        for (int j = 1; j < tree.length; j++) {
+            int parent = j + (j & -j);
+            if (parent < tree.length) tree[parent] += tree[j];
+        }
+        changeCount = 0;
+    }
+
+    /**
+     * @return the sum of all the weights.
+     */
+    public double total() {
+        if (nonZeroCount == 0) return 0.0;
+        double sum = 0.0;
+        for (int j = weights.length; j > 0; j -= j & -j) {
+            sum += tree[j];
+        }
+        return Math.max(sum, 0.0);
+    }
+
+    /**
+     * @param u a value between 0 and total().
+     * @return the index i for which u falls between the sum of the weights before i and the sum up to and
+     * including i. Indices with zero weight are never returned.
+     */
+    public int find(double u) {
+        int i = 0;
+        for (int bit = highestBit; bit > 0; bit >>= 1) {
+            int next = i + bit;
+            if (next < tree.length && tree[next] <= u) {
+                i = next;
+                u -= tree[next];
+            }
+        }
+        // rounding in the partial sums may land past the end or on an index with no weight
+        if (i >= weights.length) i = weights.length - 1;
+        while (i > 0 && weights[i] == 0.0) i -= 1;
+        while (i < weights.length - 1 && weights[i] == 0.0) i += 1;
+        return i;
+    }
+
+    /**
+     * @return an index drawn with probability proportional to its weight.
+     */
+    public int sample(RandomGenerator random) {
+        return find(random.nextDouble() * total());
+    }
+}
@@ -72,7 +72,7 @@ public class Gamma implements GenerativeDistribution1D<Double> {
         // in case the scale is type integer
         double sc = ((Number) scale.value()).doubleValue();
 
-        gammaDistribution = new GammaDistribution(sh, sc);
+        gammaDistribution = new GammaDistribution(random, sh, sc);
     }
 
     public String toString() {
@@ -26,12 +26,12 @@ public class Geometric implements GenerativeDistribution1D<Integer> {
     @GeneratorInfo(name="Gamma", description="The probability distribution of the number of failures before the first success given a fixed probability of success p, supported on the set { 0, 1, 2, 3, ... }.")
     public RandomVariable<Integer> sample() {
 
-        GeometricDistribution geom = new GeometricDistribution(p.value());
+        GeometricDistribution geom = new GeometricDistribution(random, p.value());
         return new RandomVariable<>("x", geom.sample(), this);
     }
 
     public double density(Integer i) {
-        GeometricDistribution geom = new GeometricDistribution(p.value());
+        GeometricDistribution geom = new GeometricDistribution(random, p.value());
         return geom.probability(i);
     }
 
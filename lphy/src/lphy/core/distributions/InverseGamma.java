@@ -69,7 +69,7 @@ public class InverseGamma implements GenerativeDistribution1D<Double> {
         // in case the scale is type integer
         double b = ((Number) beta.value()).doubleValue();
 
-        gammaDistribution = new GammaDistribution(a, b);
+        gammaDistribution = new GammaDistribution(Utils.getRandom(), a, b);
     }
 
     public String toString() {
@@ -34,7 +34,7 @@ public class LogNormal implements GenerativeDistribution1D<Double> {
     @GeneratorInfo(name="LogNormal", description="The log-normal probability distribution.")
     public RandomVariable<Double> sample() {
 
-        logNormalDistribution = new LogNormalDistribution(M.value(), S.value());
+        logNormalDistribution = new LogNormalDistribution(random, M.value(), S.value());
         return new RandomVariable<>("x",  logNormalDistribution.sample(), this);
     }
 
@@ -41,7 +41,7 @@ public class LogNormalMulti implements GenerativeDistribution<Double[]> {
     @GeneratorInfo(name="LogNormal", description="The log-normal probability distribution.")
     public RandomVariable<Double[]> sample() {
 
-        logNormalDistribution = new LogNormalDistribution(M.value(), S.value());
+        logNormalDistribution = new LogNormalDistribution(random, M.value(), S.value());
         Double[] result = new Double[n.value()];
         for (int i = 0; i < result.length; i++) {
             result[i] = logNormalDistribution.sample();
@@ -42,7 +42,7 @@ public class MVN implements GenerativeDistribution<Double[]> {
                 cv[i][j] = this.covariances.value()[i][j];
             }
         }
-        multivariateNormalDistribution = new MultivariateNormalDistribution(means,cv);
+        multivariateNormalDistribution = new MultivariateNormalDistribution(random, means,cv);
 
     }
 
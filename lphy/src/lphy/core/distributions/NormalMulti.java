@@ -82,7 +82,7 @@ public class NormalMulti implements GenerativeDistribution<Double[]> {
     }
 
     private void update() {
-        normalDistribution = new NormalDistribution(mean.value(), sd.value());
+        normalDistribution = new NormalDistribution(random, mean.value(), sd.value());
     }
 
     public Value<Double> getMean() {
@@ -27,12 +27,12 @@ public class Poisson implements GenerativeDistribution1D<Integer> {
     @GeneratorInfo(name="Poisson", description="The probability distribution of the number of events when the expected number of events is lambda, supported on the set { 0, 1, 2, 3, ... }.")
     public RandomVariable<Integer> sample() {
 
-        PoissonDistribution poisson = new PoissonDistribution(lambda.value());
+        PoissonDistribution poisson = new PoissonDistribution(random, lambda.value(), PoissonDistribution.DEFAULT_EPSILON, PoissonDistribution.DEFAULT_MAX_ITERATIONS);
         return new RandomVariable<>("x", poisson.sample(), this);
     }
 
     public double density(Integer i) {
-        PoissonDistribution poisson = new PoissonDistribution(lambda.value());
+        PoissonDistribution poisson = new PoissonDistribution(random, lambda.value(), PoissonDistribution.DEFAULT_EPSILON, PoissonDistribution.DEFAULT_MAX_ITERATIONS);
         return poisson.probability(i);
     }
 
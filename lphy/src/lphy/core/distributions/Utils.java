@@ -8,15 +8,29 @@ public class Utils {
 
     private static RandomGenerator random = new MersenneTwister();
 
+    // optional per-thread override, used to give parallel sampling workers their own random streams
+    private static final ThreadLocal<RandomGenerator> threadRandom = new ThreadLocal<>();
+
     public static RandomGenerator getRandom() {
-        return random;
+        RandomGenerator r = threadRandom.get();
+        return r != null ? r : random;
     }
 
     public static void setRandom(RandomGenerator r) {
         random = r;
     }
 
+    /**
+     * Sets the random generator returned by getRandom() on the calling thread only.
+     * @param r the random generator for this thread, or null to revert to the shared generator.
+     */
+    public static void setThreadRandom(RandomGenerator r) {
+        if (r == null) {
+            threadRandom.remove();
+        } else threadRandom.set(r);
+    }
+
     public static double randomGamma(double shape, double scale) {
-        return new GammaDistribution(shape, scale).sample();
+        return new GammaDistribution(getRandom(), shape, scale).sample();
     }
 }
@@ -29,7 +29,7 @@ public class Weibull implements GenerativeDistribution<Double> {
     @GeneratorInfo(name="Weibull", description="The Weibull distribution.")
     public RandomVariable<Double> sample() {
 
-        WeibullDistribution weibullDistribution = new WeibullDistribution(alpha.value(), beta.value());
+        WeibullDistribution weibullDistribution = new WeibullDistribution(Utils.getRandom(), alpha.value(), beta.value());
 
         double randomVariable = weibullDistribution.sample();
 
@@ -37,7 +37,7 @@ public class Weibull implements GenerativeDistribution<Double> {
     }
 
     public double logDensity(Double d) {
-        BetaDistribution betaDistribution = new BetaDistribution(alpha.value(), beta.value());
+        BetaDistribution betaDistribution = new BetaDistribution(Utils.getRandom(), alpha.value(), beta.value());
         return betaDistribution.logDensity(d);
     }
 
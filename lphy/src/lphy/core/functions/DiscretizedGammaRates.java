@@ -0,0 +1,39 @@
+package lphy.core.functions;
+
+import lphy.core.distributions.DiscretizedGamma;
+import lphy.graphicalModel.DeterministicFunction;
+import lphy.graphicalModel.GeneratorInfo;
+import lphy.graphicalModel.ParameterInfo;
+import lphy.graphicalModel.Value;
+import lphy.graphicalModel.types.DoubleArrayValue;
+import org.apache.commons.math3.distribution.GammaDistribution;
+
+public class DiscretizedGammaRates extends DeterministicFunction<Double[]> {
+
+    final String shapeParamName;
+    final String ncatParamName;
+
+    public DiscretizedGammaRates(@ParameterInfo(name = "shape", description = "the shape of the discretized gamma distribution.") Value<Number> shape,
+                                 @ParameterInfo(name = "ncat", description = "the number of bins in the discretization.") Value<Integer> ncat) {
+        shapeParamName = getParamName(0);
+        ncatParamName = getParamName(1);
+        setParam(shapeParamName, shape);
+        setParam(ncatParamName, ncat);
+    }
+
+    @GeneratorInfo(name = "discretizedGammaRates", description = "The rates of the ncat categories of a discretized gamma distribution with mean = 1. " +
+            "Used as the categoryRates of PhyloCTMC, with site categories drawn from GCategories.")
+    public Value<Double[]> apply() {
+        // in case the shape is type integer
+        double shape = ((Number) getParams().get(shapeParamName).value()).doubleValue();
+        int ncat = (Integer) getParams().get(ncatParamName).value();
+
+        double[] rates = DiscretizedGamma.getCategoryRates(new GammaDistribution(shape, 1.0 / shape), ncat);
+
+        Double[] categoryRates = new Double[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            categoryRates[i] = rates[i];
+        }
+        return new DoubleArrayValue(null, categoryRates, this);
+    }
+}
@@ -5,6 +5,7 @@ import lphy.evolution.tree.TimeTreeNode;
 import lphy.core.functions.newickParser.NewickASTVisitor;
 import lphy.core.functions.newickParser.NewickLexer;
 import lphy.core.functions.newickParser.NewickParser;
+import lphy.core.functions.newickParser.NewickReader;
 import lphy.core.functions.newickParser.TreeParsingException;
 import lphy.graphicalModel.DeterministicFunction;
 import lphy.graphicalModel.GeneratorInfo;
@@ -32,7 +33,25 @@ public class Newick extends DeterministicFunction<TimeTree> {
         return new Value<>(tree, this);
     }
 
-    private TimeTree parseNewick(String newick) {
+    /**
+     * Parses the tree with the single-pass NewickReader, or with the ANTLR parser when the reader does not handle
+     * the syntax or the string has an error.
+     */
+    public static TimeTree parseNewick(String newick) {
+
+        TimeTree tree = NewickReader.read(newick);
+        if (tree == null) tree = parseNewickWithANTLR(newick);
+
+        // only the tip count, as writing out a large tree costs as much as parsing it
+        LoggerUtils.log.fine("Parsed tree with " + tree.n() + " tips");
+
+        return tree;
+    }
+
+    /**
+     * Parses the tree with the ANTLR parser, which handles all of the Newick syntax.
+     */
+    public static TimeTree parseNewickWithANTLR(String newick) {
 
         CharStream charStream = CharStreams.fromString(newick);
 
@@ -72,8 +91,6 @@ public class Newick extends DeterministicFunction<TimeTree> {
         TimeTree tree = new TimeTree();
         tree.setRoot(root);
 
-        LoggerUtils.log.info("Parsed tree: " + tree);
-
         return tree;
     }
 }
@@ -0,0 +1,31 @@
+package lphy.core.functions;
+
+import lphy.graphicalModel.DeterministicFunction;
+import lphy.graphicalModel.GeneratorInfo;
+import lphy.graphicalModel.ParameterInfo;
+import lphy.graphicalModel.Value;
+import lphy.nexus.TreesFileIndex;
+
+import java.io.IOException;
+
+public class ReadTrees extends DeterministicFunction<TreesFileIndex> {
+
+    final String paramName;
+
+    public ReadTrees(@ParameterInfo(name = "file", description = "the name of a Nexus or Newick file of trees.") Value<String> file) {
+        paramName = getParamName(0);
+        setParam(paramName, file);
+    }
+
+    @GeneratorInfo(name = "readTrees", description = "A function that indexes the trees in a Nexus or Newick file, " +
+            "such as a posterior tree set. Trees are only parsed when they are used.")
+    public Value<TreesFileIndex> apply() {
+        Value<String> fileValue = (Value<String>) getParams().get(paramName);
+
+        try {
+            return new Value<>(new TreesFileIndex(fileValue.value()), this);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read trees from " + fileValue.value() + ": " + e.getMessage(), e);
+        }
+    }
+}
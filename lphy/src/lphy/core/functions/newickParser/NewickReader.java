@@ -0,0 +1,380 @@
+package lphy.core.functions.newickParser;
+
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a Newick tree in a single pass over the characters, building the TimeTreeNodes as it goes, without
+ * tokens or a parse tree. The tree is the same as the one built by the ANTLR NewickParser and NewickASTVisitor.
+ * Syntax that this reader does not handle (nested or quoted-key metadata, whitespace inside metadata, numbers
+ * in the less common forms the Newick grammar allows), syntax errors and duplicate taxa make read return null,
+ * so that the caller can fall back to the ANTLR parser, which handles all of the grammar and reports errors.
+ */
+public class NewickReader {
+
+    private static final double DEFAULT_LENGTH = 0.001;
+
+    // exact powers of ten for the fast path of parseNumber
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    // thrown, without a stack trace, where the ANTLR parser must take over
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+
+    private final CharSequence text;
+    private final int end;
+    private int pos;
+
+    // nodes in the order they are started, which is pre-order
+    private final List<TimeTreeNode> nodes = new ArrayList<>();
+    private final Map<String, Integer> labels = new HashMap<>();
+
+    private NewickReader(CharSequence text, int start, int end) {
+        this.text = text;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the tree, or null if the ANTLR parser is needed.
+     */
+    public static TimeTree read(CharSequence newick) {
+        return read(newick, 0, newick.length());
+    }
+
+    /**
+     * Reads the tree in the characters from start to end, which hold a Newick tree and optionally its semicolon.
+     *
+     * @return the tree, or null if the ANTLR parser is needed.
+     */
+    public static TimeTree read(CharSequence text, int start, int end) {
+        try {
+            return new NewickReader(text, start, end).readTree();
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    private TimeTree readTree() {
+
+        // the internal nodes whose children are being read
+        List<TimeTreeNode> open = new ArrayList<>();
+        TimeTreeNode root = null;
+
+        while (true) {
+            // start a node, descending through any opening brackets to its first leaf
+            skipWhitespace();
+            while (pos < end && text.charAt(pos) == '(') {
+                pos += 1;
+                open.add(startNode(open));
+                skipWhitespace();
+            }
+            TimeTreeNode node = startNode(open);
+            readPost(node);
+
+            // then close nodes until there is a sibling to start
+            while (true) {
+                skipWhitespace();
+                if (open.isEmpty()) {
+                    root = node;
+                    break;
+                }
+                char c = next();
+                if (c == ',') break;
+                if (c != ')') throw UNSUPPORTED;
+                node = open.remove(open.size() - 1);
+                readPost(node);
+            }
+            if (root != null) break;
+        }
+
+        if (pos < end && text.charAt(pos) == ';') pos += 1;
+        skipWhitespace();
+        if (pos != end) throw UNSUPPORTED;
+
+        // as NewickASTVisitor, children are ordered by the order their leaf labels first appear, with internal and
+        // unlabelled nodes (index -1) first, by a stable sort
+        Comparator<TimeTreeNode> byIndex = Comparator.comparingInt(TimeTreeNode::getIndex);
+        for (TimeTreeNode n : nodes) {
+            List<TimeTreeNode> children = n.getChildren();
+            for (int i = 1; i < children.size(); i++) {
+                if (children.get(i - 1).getIndex() > children.get(i).getIndex()) {
+                    children.sort(byIndex);
+                    break;
+                }
+            }
+        }
+
+        // ages hold branch lengths until here; parents come before their children in pre-order
+        double minHeight = Double.POSITIVE_INFINITY;
+        for (TimeTreeNode n : nodes) {
+            double height = (n.isRoot() ? 0.0 : n.getParent().getAge()) - n.getAge();
+            n.setAge(height);
+            if (n.isLeaf()) minHeight = Math.min(minHeight, height);
+        }
+        double delta = -minHeight;
+        for (TimeTreeNode n : nodes) {
+            n.setAge(n.getAge() + delta);
+            if (n.isLeaf() && n.getAge() < 0) n.setAge(0);
+        }
+
+        TimeTree tree = new TimeTree();
+        tree.setRoot(root);
+        return tree;
+    }
+
+    private TimeTreeNode startNode(List<TimeTreeNode> open) {
+        TimeTreeNode node = new TimeTreeNode(null, null);
+        node.setIndex(-1);
+        if (!open.isEmpty()) open.get(open.size() - 1).addChild(node);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Reads what follows a node: label? meta? (':' meta? number)?
+     */
+    private void readPost(TimeTreeNode node) {
+        skipWhitespace();
+        if (pos < end) {
+            char c = text.charAt(pos);
+            int start = pos;
+            if (c == '\'' || c == '"') {
+                skipQuoted(c);
+            } else {
+                while (pos < end && isLabelChar(text.charAt(pos))) pos += 1;
+            }
+            if (pos > start) {
+                String label = text.subSequence(start, pos).toString();
+                node.setId(label);
+                if (node.isLeaf()) {
+                    Integer index = labels.putIfAbsent(label, labels.size());
+                    // a duplicate taxon, which the ANTLR parser reports
+                    if (index != null) throw UNSUPPORTED;
+                    node.setIndex(labels.size() - 1);
+                }
+            }
+        }
+
+        skipWhitespace();
+        readMeta(node);
+
+        node.setAge(DEFAULT_LENGTH);
+        skipWhitespace();
+        if (pos < end && text.charAt(pos) == ':') {
+            pos += 1;
+            skipWhitespace();
+            readMeta(node);
+            skipWhitespace();
+            int start = pos;
+            while (pos < end && isLabelChar(text.charAt(pos))) pos += 1;
+            if (!isNumber(start, pos)) throw UNSUPPORTED;
+            node.setAge(parseNumber(start, pos));
+        }
+    }
+
+    /**
+     * Reads metadata if there is any: '[&' key=value (',' key=value)* ']'
+     */
+    private void readMeta(TimeTreeNode node) {
+        if (pos + 1 >= end || text.charAt(pos) != '[' || text.charAt(pos + 1) != '&') return;
+        pos += 2;
+        while (true) {
+            int start = pos;
+            while (pos < end && isAttribChar(text.charAt(pos))) pos += 1;
+            if (pos == start || isNumberLike(start, pos)) throw UNSUPPORTED;
+            String key = text.subSequence(start, pos).toString();
+            if (next() != '=') throw UNSUPPORTED;
+
+            Object value;
+            if (pos < end && text.charAt(pos) == '{') {
+                pos += 1;
+                value = readVector();
+            } else {
+                value = readAttribValue();
+            }
+            node.setMetaData(key, value);
+
+            char c = next();
+            if (c == ']') return;
+            if (c != ',') throw UNSUPPORTED;
+        }
+    }
+
+    private Object readAttribValue() {
+        int start = pos;
+        if (pos < end && (text.charAt(pos) == '\'' || text.charAt(pos) == '"')) {
+            skipQuoted(text.charAt(pos));
+            return text.subSequence(start + 1, pos - 1).toString();
+        }
+        while (pos < end && isAttribChar(text.charAt(pos))) pos += 1;
+        if (pos == start) throw UNSUPPORTED;
+        if (isNumber(start, pos)) return parseNumber(start, pos);
+        if (isNumberLike(start, pos)) throw UNSUPPORTED;
+        return text.subSequence(start, pos).toString();
+    }
+
+    /**
+     * Reads the elements of a vector after its '{', as NewickASTVisitor: numbers if every element parses as a
+     * double, and otherwise the text of each element.
+     */
+    private Object readVector() {
+        List<String> elements = new ArrayList<>();
+        while (true) {
+            int start = pos;
+            if (pos < end && (text.charAt(pos) == '\'' || text.charAt(pos) == '"')) {
+                skipQuoted(text.charAt(pos));
+            } else {
+                while (pos < end && isAttribChar(text.charAt(pos))) pos += 1;
+            }
+            if (pos == start) throw UNSUPPORTED;
+            elements.add(text.subSequence(start, pos).toString());
+
+            char c = next();
+            if (c == '}') break;
+            if (c != ',') throw UNSUPPORTED;
+        }
+
+        try {
+            Double[] values = new Double[elements.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Double.parseDouble(elements.get(i));
+            }
+            return values;
+        } catch (NumberFormatException e) {
+            return elements.toArray(new String[0]);
+        }
+    }
+
+    private char next() {
+        if (pos == end) throw UNSUPPORTED;
+        return text.charAt(pos++);
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') return;
+            pos += 1;
+        }
+    }
+
+    // a quoted string, including both quotes
+    private void skipQuoted(char quote) {
+        pos += 1;
+        while (pos < end && text.charAt(pos) != quote) pos += 1;
+        if (pos == end) throw UNSUPPORTED;
+        pos += 1;
+    }
+
+    // the characters of unquoted labels
+    private static boolean isLabelChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '_' || c == '-' || c == '.' || c == '+' || c == '/' || c == '|' ||
+                c == '#' || c == '*' || c == '%' || c == '&';
+    }
+
+    // the characters of unquoted metadata keys and values
+    private static boolean isAttribChar(char c) {
+        return isLabelChar(c) || c == ':';
+    }
+
+    /**
+     * @return true if the text is a number of the form -?(0|[1-9][0-9]*)(.[0-9]+)?([eE]-?[0-9]+)?, which the
+     * Newick grammar always reads as a number.
+     */
+    private boolean isNumber(int start, int end) {
+        int i = start;
+        if (i < end && text.charAt(i) == '-') i += 1;
+        if (i == end || !isDigit(text.charAt(i))) return false;
+        if (text.charAt(i) == '0') i += 1;
+        else while (i < end && isDigit(text.charAt(i))) i += 1;
+        if (i < end && text.charAt(i) == '.') {
+            i += 1;
+            int digits = i;
+            while (i < end && isDigit(text.charAt(i))) i += 1;
+            if (i == digits) return false;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i += 1;
+            if (i < end && text.charAt(i) == '-') i += 1;
+            int digits = i;
+            while (i < end && isDigit(text.charAt(i))) i += 1;
+            if (i == digits) return false;
+        }
+        return i == end;
+    }
+
+    // true if the text is made only of characters that can form a number, so the grammar may read it as one
+    private boolean isNumberLike(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c) && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses a number accepted by isNumber, to the same double as Double.parseDouble. When the digits fit exactly
+     * in a double and the power of ten is exact, one multiplication or division gives the correctly rounded value.
+     */
+    private double parseNumber(int start, int end) {
+        int i = start;
+        boolean negative = text.charAt(i) == '-';
+        if (negative) i += 1;
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (isDigit(c)) {
+                if (digits > 0 || c != '0') digits += 1;
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) exponent -= 1;
+            } else break;
+        }
+        if (i < end) {
+            i += 1;
+            boolean negativeExponent = text.charAt(i) == '-';
+            if (negativeExponent) i += 1;
+            if (end - i > 5) return slowParse(start, end);
+            int e = 0;
+            for (; i < end; i++) e = e * 10 + (text.charAt(i) - '0');
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (digits > 15 || exponent > 22 || exponent < -22) return slowParse(start, end);
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private double slowParse(int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+}
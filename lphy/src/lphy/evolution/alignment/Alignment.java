@@ -5,22 +5,59 @@ import lphy.app.AlignmentComponent;
 import lphy.app.HasComponentView;
 
 import javax.swing.*;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * Created by adru001 on 2/02/20.
+ *
+ * The states are bit-packed into a single long array: 1 bit per site for binary data, 2 bits for nucleotides,
+ * 4 bits for up to 16 states and 8 bits for up to 256 states. Each taxon's row starts on a word boundary,
+ * so sites in different words can be written concurrently.
  */
 public class Alignment implements HasComponentView<Alignment> {
 
-    int[][] alignment;
+    long[] states;
+    int taxa;
+    int length;
     Map<String, Integer> idMap;
     Map<Integer, String> reverseMap;
     int numStates;
 
+    // packing of states into words
+    int bitShift;
+    int siteShift;
+    int wordsPerRow;
+    long stateMask;
+
+    // built on the first request, or site by site by a caller that opts in with getIncrementalSitePatterns()
+    SitePatterns sitePatterns = null;
+
+    /**
+     * The most sites packed into one word of storage, which is the case for binary data.
+     * Blocks of sites that start on a multiple of this and whose size is a multiple of it never share a word.
+     */
+    public static final int MAX_SITES_PER_WORD = 64;
+
     public Alignment(int taxa, int length, Map<String, Integer> idMap, int numStates) {
-        alignment = new int[taxa][length];
+        this.taxa = taxa;
+        this.length = length;
+
+        // bits per state is a power of two so that states never straddle words
+        bitShift = 0;
+        while ((1L << (1 << bitShift)) < numStates) bitShift += 1;
+        siteShift = 6 - bitShift;
+        stateMask = (bitShift == 6) ? -1L : (1L << (1 << bitShift)) - 1;
+        long rowWords = ((long) length + (1 << siteShift) - 1) >>> siteShift;
+        // every word index is below the size, so indexing with int arithmetic cannot overflow
+        long size = taxa * rowWords;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("An alignment of " + taxa + " taxa and " + length + " sites with " + numStates +
+                    " states needs " + size + " words of storage, more than the " + Integer.MAX_VALUE + " an array can hold.");
+        }
+        wordsPerRow = (int) rowWords;
+        states = new long[(int) size];
+
         this.idMap = idMap;
 
         reverseMap = new TreeMap<>();
@@ -34,15 +71,46 @@ public class Alignment implements HasComponentView<Alignment> {
     public void setState(int taxon, int position, int state) {
 
         if (state < 0 || state > numStates-1) throw new IllegalArgumentException("Tried to set a state outside of the range!");
-        alignment[taxon][position] = state;
+        putState(taxon, position, state);
     }
 
     public void setState(String taxon, int position, int state) {
-        alignment[idMap.get(taxon)][position] = state;
+        Integer index = idMap.get(taxon);
+        if (index == null) throw new IllegalArgumentException("Unknown taxon " + taxon);
+        setState(index, position, state);
     }
 
     public int getState(int taxon, int position) {
-        return alignment[taxon][position];
+        int shift = (position & ((1 << siteShift) - 1)) << bitShift;
+        return (int) ((states[taxon * wordsPerRow + (position >>> siteShift)] >>> shift) & stateMask);
+    }
+
+    private void putState(int taxon, int position, int state) {
+        if (sitePatterns != null && position < sitePatterns.getSiteCount()) {
+            // a site that has already been compressed has changed
+            sitePatterns = null;
+        }
+        int word = taxon * wordsPerRow + (position >>> siteShift);
+        int shift = (position & ((1 << siteShift) - 1)) << bitShift;
+        states[word] = (states[word] & ~(stateMask << shift)) | ((state & stateMask) << shift);
+    }
+
+    /**
+     * @return the site patterns of the whole alignment, computing any that are missing.
+     */
+    public SitePatterns getSitePatterns() {
+        SitePatterns patterns = getIncrementalSitePatterns();
+        patterns.addSites(L());
+        return patterns;
+    }
+
+    /**
+     * @return the site patterns of the sites added so far, for callers that add sites to the patterns
+     * as they finish filling them in. No sites are added unless the caller adds them.
+     */
+    public SitePatterns getIncrementalSitePatterns() {
+        if (sitePatterns == null) sitePatterns = new SitePatterns(this);
+        return sitePatterns;
     }
 
     @Override
@@ -54,11 +122,11 @@ public class Alignment implements HasComponentView<Alignment> {
     }
 
     public final int n() {
-        return alignment.length;
+        return taxa;
     }
 
     public final int L() {
-        return alignment[0].length;
+        return length;
     }
 
     public String getId(int taxonIndex) {
@@ -71,8 +139,12 @@ public class Alignment implements HasComponentView<Alignment> {
         for (int i = 0; i < n(); i++) {
             builder.append("  ");
             builder.append(reverseMap.get(i));
-            builder.append(" = ");
-            builder.append(Arrays.toString(alignment[i]));
+            builder.append(" = [");
+            for (int j = 0; j < L(); j++) {
+                if (j > 0) builder.append(", ");
+                builder.append(getState(i, j));
+            }
+            builder.append("]");
             if (i < n()-1) {
                 builder.append(",");
             }
@@ -107,9 +179,9 @@ public class Alignment implements HasComponentView<Alignment> {
     }
 
     public String getSequence(int taxonIndex) {
-        StringBuilder builder = new StringBuilder();
-        for (int j = 0; j < alignment[taxonIndex].length; j++) {
-            builder.append(getChar(alignment[taxonIndex][j]));
+        StringBuilder builder = new StringBuilder(L());
+        for (int j = 0; j < L(); j++) {
+            builder.append(getChar(getState(taxonIndex, j)));
         }
         return builder.toString();
     }
@@ -1,28 +1,30 @@
 package lphy.evolution.alignment;
 
-import lphy.evolution.tree.TimeTree;
 import lphy.graphicalModel.RandomVariable;
 import lphy.graphicalModel.RandomVariableLogger;
-import lphy.nexus.NexusWriter;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
+ * Writes each sampled alignment to its own file, name_id_rep.format, through a ChannelAlignmentWriter.
  * Created by adru001 on 10/03/20.
  */
 public class AlignmentFileLogger implements RandomVariableLogger {
 
     String name;
-    List<FileWriter> fileWriter = new ArrayList<>();
+    ChannelAlignmentWriter.Format format;
 
     public AlignmentFileLogger(String name) {
+        this(name, ChannelAlignmentWriter.Format.nexus);
+    }
+
+    public AlignmentFileLogger(String name, ChannelAlignmentWriter.Format format) {
 
         this.name = name;
+        this.format = format;
     }
 
     public void log(int rep, List<RandomVariable<?>> variables) {
@@ -37,20 +39,7 @@ public class AlignmentFileLogger implements RandomVariableLogger {
     }
 
     public void close() {
-        for (FileWriter writer : fileWriter) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private void openFiles(List<RandomVariable<TimeTree>> treeVariables) throws IOException {
-        for (RandomVariable<TimeTree> tree : treeVariables) {
-            String fileName = name + "_" + tree.getId() + ".trees";
-            fileWriter.add(new FileWriter(fileName));
-        }
+        // each alignment file is closed once it has been written
     }
 
     private List<RandomVariable<Alignment>> getAlignmentVariables(List<RandomVariable<?>> variables) {
@@ -64,13 +53,13 @@ public class AlignmentFileLogger implements RandomVariableLogger {
     }
 
     private void logAlignment(RandomVariable<Alignment> alignment, int rep) throws IOException {
-        String fileName = name + "_" + alignment.getId() + "_" + rep + ".nexus";
-        PrintStream stream = new PrintStream(fileName);
+        String fileName = name + "_" + alignment.getId() + "_" + rep + "." + format;
+        Alignment value = alignment.value();
 
-        try {
-            NexusWriter.write(alignment.value(), new LinkedList<>(),stream);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // the whole alignment is a single chunk
+        try (AlignmentSink writer = new ChannelAlignmentWriter(Paths.get(fileName), format)) {
+            writer.start(value.getTaxaNames(), value.getDataTypeDescription(), value.L());
+            writer.write(value, 0);
         }
     }
 }
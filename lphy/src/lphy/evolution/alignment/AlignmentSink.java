@@ -0,0 +1,32 @@
+package lphy.evolution.alignment;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives a simulated alignment a chunk of sites at a time, so that the full alignment never has to be held in memory.
+ */
+public interface AlignmentSink extends Closeable {
+
+    /**
+     * Called once before any sites are written.
+     *
+     * @param taxaNames           the taxa names in taxon index order.
+     * @param dataTypeDescription the data type, as given by Alignment.getDataTypeDescription().
+     * @param siteCount           the total number of sites that will be written.
+     */
+    void start(String[] taxaNames, String dataTypeDescription, int siteCount) throws IOException;
+
+    /**
+     * Called for consecutive chunks of sites, in site order.
+     *
+     * @param chunk the states of the sites in this chunk, the chunk may be reused for the next call.
+     * @param start the index of the first site of this chunk in the full alignment.
+     */
+    void write(Alignment chunk, int start) throws IOException;
+
+    /**
+     * Called once all sites have been written, or once writing has failed.
+     */
+    void close() throws IOException;
+}
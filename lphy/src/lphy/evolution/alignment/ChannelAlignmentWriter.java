@@ -0,0 +1,107 @@
+package lphy.evolution.alignment;
+
+import lphy.nexus.TaxaBlock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an alignment to a FASTA, Nexus or PHYLIP file as it is simulated.
+ * The alignment length is known in advance, so the file layout is fixed when writing starts:
+ * the text around the sequences is written first, and each chunk of sites is then written
+ * straight into its place in every taxon's sequence with positional channel writes.
+ */
+public class ChannelAlignmentWriter implements AlignmentSink {
+
+    public enum Format {fasta, nexus, phylip}
+
+    private final Path path;
+    private final Format format;
+
+    private FileChannel channel;
+    // the file offset of the first site of each taxon's sequence
+    private long[] sequenceOffsets;
+
+    public ChannelAlignmentWriter(Path path, Format format) {
+        this.path = path;
+        this.format = format;
+    }
+
+    @Override
+    public void start(String[] taxaNames, String dataTypeDescription, int siteCount) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        sequenceOffsets = new long[taxaNames.length];
+
+        long position = write(getHeader(taxaNames, dataTypeDescription, siteCount), 0);
+        for (int i = 0; i < taxaNames.length; i++) {
+            position += write(getSequencePrefix(taxaNames[i]), position);
+            sequenceOffsets[i] = position;
+            position += siteCount;
+            position += write(getSequenceSuffix(), position);
+        }
+        write(getFooter(), position);
+    }
+
+    @Override
+    public void write(Alignment chunk, int start) throws IOException {
+        for (int i = 0; i < sequenceOffsets.length; i++) {
+            write(chunk.getSequence(i), sequenceOffsets[i] + start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private int write(String text, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        int size = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return size;
+    }
+
+    private String getHeader(String[] taxaNames, String dataTypeDescription, int siteCount) {
+        switch (format) {
+            case nexus:
+                // the same layout NexusWriter produces for an alignment
+                return "#NEXUS\n\n" + new TaxaBlock(taxaNames) +
+                        "\nbegin characters;\n" +
+                        "\tdimensions nchar=" + siteCount + ";\n" +
+                        "\tformat datatype=" + dataTypeDescription + ";\n" +
+                        "\tmatrix ";
+            case phylip:
+                return taxaNames.length + " " + siteCount + "\n";
+            case fasta: default:
+                return "";
+        }
+    }
+
+    private String getSequencePrefix(String taxonName) {
+        switch (format) {
+            case nexus:
+                return "\n\t\t" + taxonName + " ";
+            case phylip:
+                return taxonName + " ";
+            case fasta: default:
+                return ">" + taxonName + "\n";
+        }
+    }
+
+    private String getSequenceSuffix() {
+        return (format == Format.nexus) ? "" : "\n";
+    }
+
+    private String getFooter() {
+        return (format == Format.nexus) ? ";\nend;\n" : "";
+    }
+}
@@ -18,6 +18,6 @@ public class ErrorAlignment extends Alignment {
     }
 
     public boolean isError(int i, int j) {
-        return alignment[i][j] != parent.alignment[i][j];
+        return getState(i, j) != parent.getState(i, j);
     }
 }
@@ -0,0 +1,130 @@
+package lphy.evolution.alignment;
+
+import java.util.*;
+
+/**
+ * A pattern-compressed view of an alignment: the unique site columns, the number of sites sharing each
+ * column (its weight) and the index of the pattern at each site.
+ * Sites are added in order, so a simulator can build the patterns as it fills the alignment column by column.
+ * Each pattern is represented by the first site that has it, so no states are copied out of the alignment.
+ */
+public class SitePatterns {
+
+    private final Alignment alignment;
+
+    private final Map<Column, Integer> patternMap = new HashMap<>();
+    // the first site with each pattern
+    private int[] patternSites = new int[16];
+    private int[] weights = new int[16];
+    private int patternCount = 0;
+    private final int[] sitePatterns;
+
+    // the number of sites added so far
+    private int siteCount = 0;
+
+    public SitePatterns(Alignment alignment) {
+        this.alignment = alignment;
+        sitePatterns = new int[alignment.L()];
+    }
+
+    /**
+     * Adds the sites from the current site count up to end (exclusive).
+     * The states of these sites must already be final in the alignment.
+     */
+    public void addSites(int end) {
+        for (int j = siteCount; j < end; j++) {
+            Column column = new Column(j);
+
+            Integer pattern = patternMap.get(column);
+            if (pattern == null) {
+                pattern = patternCount++;
+                patternMap.put(column, pattern);
+                if (pattern == weights.length) {
+                    weights = Arrays.copyOf(weights, weights.length * 2);
+                    patternSites = Arrays.copyOf(patternSites, patternSites.length * 2);
+                }
+                patternSites[pattern] = j;
+            }
+            weights[pattern] += 1;
+            sitePatterns[j] = pattern;
+        }
+        if (end > siteCount) siteCount = end;
+    }
+
+    /**
+     * @return the number of sites added so far.
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @return the states of the given pattern, one per taxon.
+     */
+    public int[] getPattern(int pattern) {
+        int[] states = new int[alignment.n()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = alignment.getState(i, patternSites[pattern]);
+        }
+        return states;
+    }
+
+    public int getPatternState(int taxon, int pattern) {
+        return alignment.getState(taxon, patternSites[pattern]);
+    }
+
+    /**
+     * @return the number of sites with the given pattern.
+     */
+    public int getPatternWeight(int pattern) {
+        return weights[pattern];
+    }
+
+    public int[] getPatternWeights() {
+        return Arrays.copyOf(weights, patternCount);
+    }
+
+    /**
+     * @return the index of the pattern at the given site.
+     */
+    public int getPatternIndex(int site) {
+        return sitePatterns[site];
+    }
+
+    /**
+     * A site of the alignment, compared by the states in its column.
+     */
+    private class Column {
+
+        final int site;
+        final int hash;
+
+        Column(int site) {
+            this.site = site;
+            int h = 1;
+            for (int i = 0; i < alignment.n(); i++) {
+                h = 31 * h + alignment.getState(i, site);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Column)) return false;
+            int otherSite = ((Column) o).site;
+            for (int i = 0; i < alignment.n(); i++) {
+                if (alignment.getState(i, site) != alignment.getState(i, otherSite)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -22,8 +22,6 @@ public class BirthDeathSamplingTree implements GenerativeDistribution<TimeTree>
     private Value<Double> rho;
     private Value<Double> rootAge;
 
-    private List<TimeTreeNode> activeNodes;
-
     RandomGenerator random;
 
     public BirthDeathSamplingTree(@ParameterInfo(name = "lambda", description = "per-lineage birth rate.") Value<Double> birthRate,
@@ -42,8 +40,6 @@ public class BirthDeathSamplingTree implements GenerativeDistribution<TimeTree>
         deathRateParamName = getParamName(1);
         rhoParamName = getParamName(2);
         rootAgeParamName = getParamName(3);
-
-        activeNodes = new ArrayList<>();
     }
 
 
@@ -51,89 +47,87 @@ public class BirthDeathSamplingTree implements GenerativeDistribution<TimeTree>
             "Conditioned on root age.")
     public RandomVariable<TimeTree> sample() {
 
-        BirthDeathTree birthDeathTree = new BirthDeathTree(birthRate, deathRate, rootAge);
-        RandomVariable<TimeTree> fullTree = birthDeathTree.sample();
+        double birthRate = this.birthRate.value();
+        double deathRate = this.deathRate.value();
+        double p = rho.value();
 
-        RhoSampleTree rhoSampleTree = new RhoSampleTree(fullTree, rho);
+        TimeTree tree = new TimeTree();
+        List<TimeTreeNode> activeNodes = new ArrayList<>();
 
-        return rhoSampleTree.sample();
-    }
+        // extinct and unsampled lineages are pruned as soon as they are known, so only the tree
+        // of the surviving lineages is ever held, and the reconstructed tree is what is left at the end
+        while (true) {
+            activeNodes.clear();
 
-    private int singleChildNodeCount(TimeTreeNode node) {
-        int count = 0;
-        if (node.getChildCount() == 1) {
-            count += 1;
-        }
-        for (TimeTreeNode child : node.getChildren()) {
-            count += singleChildNodeCount(child);
-        }
-        return count;
-    }
+            TimeTreeNode root = new TimeTreeNode(0 + "", tree);
+            root.setAge(rootAge.value());
+            activeNodes.add(root);
 
-    private TimeTreeNode removeTwoDegreeNodes(TimeTreeNode node, TimeTreeNode root) {
-        if (node.getChildCount() == 1) {
+            double time = root.getAge();
 
-            if (!node.isRoot()) {
-                node.getParent().removeChild(node);
-            }
-            TimeTreeNode grandChild = node.getChildren().get(0);
-            node.removeChild(grandChild);
-            if (!node.isRoot()) {
-                node.getParent().addChild(grandChild);
-            } else {
-                root = grandChild;
-            }
-            return removeTwoDegreeNodes(grandChild, root);
-        } else {
+            int[] nextNum = {1};
+            doBirth(activeNodes, time, nextNum, tree);
 
-            List<TimeTreeNode> children = new ArrayList<>();
-            children.addAll(node.getChildren());
+            while (time > 0.0 && activeNodes.size() > 0) {
+                int k = activeNodes.size();
 
-            for (TimeTreeNode child : children) {
-                removeTwoDegreeNodes(child, root);
-            }
-        }
-        return root;
-    }
+                double totalRate = (birthRate + deathRate) * (double) k;
 
-    private boolean removeAllMarked(TimeTreeNode node) {
+                // random exponential variate
+                double x = -Math.log(random.nextDouble()) / totalRate;
+                time -= x;
 
-        boolean found = false;
-        if (!node.isLeaf()) {
-            for (TimeTreeNode child : node.getChildren()) {
-                removeAllMarked(child);
-            }
+                if (time < 0) break;
 
-            Set<TimeTreeNode> nodesToRemove = new HashSet<>();
-            for (TimeTreeNode child : node.getChildren()) {
-                if (markedForRemoval(child)) {
-                    nodesToRemove.add(child);
-                    found = true;
+                double U = random.nextDouble();
+                if (U < birthRate / (birthRate + deathRate)) {
+                    doBirth(activeNodes, time, nextNum, tree);
+                } else {
+                    removeLineage(removeRandomNode(activeNodes));
                 }
             }
-            for (TimeTreeNode child : nodesToRemove) {
-                node.removeChild(child);
+
+            if (activeNodes.size() == 0) continue;
+
+            // sample the tips at time zero, until at least one is sampled
+            boolean[] sampled = new boolean[activeNodes.size()];
+            int sampleCount = 0;
+            while (sampleCount == 0) {
+                for (int i = 0; i < sampled.length; i++) {
+                    sampled[i] = random.nextDouble() < p;
+                    if (sampled[i]) sampleCount += 1;
+                }
             }
-            if (node.getChildCount() == 0) {
-                markForRemoval(node);
-                found = true;
+
+            TimeTreeNode sampledTip = null;
+            for (int i = 0; i < sampled.length; i++) {
+                TimeTreeNode tip = activeNodes.get(i);
+                if (sampled[i]) {
+                    tip.setAge(0.0);
+                    sampledTip = tip;
+                } else removeLineage(tip);
             }
-        }
-        return found;
-    }
 
-    private boolean markedForRemoval(TimeTreeNode node) {
-        Object remove = node.getMetaData("remove");
-        return (remove instanceof Boolean && (Boolean)remove);
-    }
+            TimeTreeNode newRoot = sampledTip;
+            while (!newRoot.isRoot()) newRoot = newRoot.getParent();
+
+            tree.setRoot(newRoot, true);
 
+            return new RandomVariable<>("\u03C8", tree, this);
+        }
+    }
 
-    private void markForRemoval(TimeTreeNode node) {
-        node.setMetaData("remove", true);
+    private TimeTreeNode removeRandomNode(List<TimeTreeNode> activeNodes) {
+        int index = random.nextInt(activeNodes.size());
+        int last = activeNodes.size() - 1;
+        TimeTreeNode node = activeNodes.get(index);
+        activeNodes.set(index, activeNodes.get(last));
+        activeNodes.remove(last);
+        return node;
     }
 
     private void doBirth(List<TimeTreeNode> activeNodes, double age, int[] nextnum, TimeTree tree) {
-        TimeTreeNode parent = activeNodes.remove(random.nextInt(activeNodes.size()));
+        TimeTreeNode parent = removeRandomNode(activeNodes);
         parent.setAge(age);
         TimeTreeNode child1 = new TimeTreeNode("" + nextnum[0], tree);
         nextnum[0] += 1;
@@ -147,13 +141,24 @@ public class BirthDeathSamplingTree implements GenerativeDistribution<TimeTree>
         activeNodes.add(child2);
     }
 
-    private void doDeath(List<TimeTreeNode> activeNodes, double age) {
-        TimeTreeNode deadNode = activeNodes.remove(random.nextInt(activeNodes.size()));
-        deadNode.setAge(age);
-        markForRemoval(deadNode);
+    /**
+     * Detaches a lineage that has died or was not sampled, and splices out its parent, which is left with a single child.
+     */
+    private void removeLineage(TimeTreeNode node) {
+        TimeTreeNode parent = node.getParent();
+        if (parent == null) return;
+
+        parent.removeChild(node);
+
+        TimeTreeNode sibling = parent.getChildren().get(0);
+        TimeTreeNode grandParent = parent.getParent();
+        parent.removeChild(sibling);
+        if (grandParent != null) {
+            grandParent.removeChild(parent);
+            grandParent.addChild(sibling);
+        }
     }
 
-
     @Override
     public double logDensity(TimeTree timeTree) {
 
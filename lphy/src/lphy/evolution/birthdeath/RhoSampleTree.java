@@ -69,39 +69,50 @@ public class RhoSampleTree implements GenerativeDistribution<TimeTree> {
     }
 
     private TimeTreeNode getFirstNonSingleChildNode(TimeTreeNode node) {
-        if (node.getChildCount() != 1) return node;
-        return getFirstNonSingleChildNode(node.getChildren().get(0));
+        while (node.getChildCount() == 1) {
+            node = node.getChildren().get(0);
+        }
+        return node;
     }
 
-    private void removeSingleChildNodes(TimeTreeNode node) {
-        if (node.getChildCount() == 1) {
-            TimeTreeNode grandChild = node.getChildren().get(0);
-            TimeTreeNode parent = node.getParent();
-            parent.removeChild(node);
-            node.removeChild(grandChild);
-            parent.addChild(grandChild);
-            removeSingleChildNodes(grandChild);
-        } else {
-            List<TimeTreeNode> copy = new ArrayList<>();
-            copy.addAll(node.getChildren());
-            for (TimeTreeNode child : copy) {
-                removeSingleChildNodes(child);
+    /**
+     * Splices out every single-child node below the given node, depth first with children in order.
+     */
+    private void removeSingleChildNodes(TimeTreeNode root) {
+        Deque<TimeTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TimeTreeNode node = stack.pop();
+            if (node.getChildCount() == 1) {
+                TimeTreeNode grandChild = node.getChildren().get(0);
+                TimeTreeNode parent = node.getParent();
+                parent.removeChild(node);
+                node.removeChild(grandChild);
+                parent.addChild(grandChild);
+                stack.push(grandChild);
+            } else {
+                List<TimeTreeNode> children = node.getChildren();
+                for (int i = node.getChildCount() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
             }
         }
     }
 
-    private void removeUnmarkedNodes(TimeTreeNode node) {
-        if (!isMarked(node)) {
-            if (node.isRoot()) throw new RuntimeException("Root should always be marked! Something is very wrong!");
-            node.getParent().removeChild(node);
-        } else if (!node.isLeaf()) {
-            List<TimeTreeNode> copy = new ArrayList<>();
-            copy.addAll(node.getChildren());
-            for (TimeTreeNode child : copy) {
-                removeUnmarkedNodes(child);
+    private void removeUnmarkedNodes(TimeTreeNode root) {
+        Deque<TimeTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TimeTreeNode node = stack.pop();
+            if (!isMarked(node)) {
+                if (node.isRoot()) throw new RuntimeException("Root should always be marked! Something is very wrong!");
+                node.getParent().removeChild(node);
+            } else if (!node.isLeaf()) {
+                for (TimeTreeNode child : node.getChildren()) {
+                    stack.push(child);
+                }
             }
         }
-
     }
 
     private boolean isMarked(TimeTreeNode node) {
@@ -110,9 +121,10 @@ public class RhoSampleTree implements GenerativeDistribution<TimeTree> {
     }
 
     private void markNodeAndDirectAncestors(TimeTreeNode node) {
-        if (node != null) {
+        // once a marked node is reached, all of its ancestors have been marked already
+        while (node != null && !isMarked(node)) {
             node.setMetaData("mark", true);
-            markNodeAndDirectAncestors(node.getParent());
+            node = node.getParent();
         }
     }
 
@@ -37,24 +37,22 @@ public class LocalBranchRates extends DeterministicFunction<Double[]> {
         TimeTree tree = ((Value<TimeTree>) params.get(treeParamName)).value();
 
         Double[] branchRates = new Double[rawRates.length];
-        traverseTree(tree.getRoot(), branchRates, rawRates, indicators);
+        traverseTree(tree, branchRates, rawRates, indicators);
 
         return new Value<>(branchRates, this);
     }
 
-    private void traverseTree(TimeTreeNode node, Double[] branchRates, Double[] rawRates, Boolean[] indicators) {
+    private void traverseTree(TimeTree tree, Double[] branchRates, Double[] rawRates, Boolean[] indicators) {
 
-        int nodeNumber = node.getIndex();
+        for (int nodeNumber : tree.getPreorder()) {
+            TimeTreeNode node = tree.getNodeByIndex(nodeNumber);
 
-        // if this is the root or the indicator is true then take the raw rate as this branch's rate;
-        if (node.isRoot() || indicators[nodeNumber]) {
-            branchRates[nodeNumber] = rawRates[nodeNumber];
-        } else {   // if indicator is false then take branchRate of parent. Recursion is parent-first, so this will always have been populated before this call.
-            branchRates[nodeNumber] = branchRates[node.getParent().getIndex()];
-        }
-
-        for (TimeTreeNode child : node.getChildren()) {
-            traverseTree(child, branchRates, rawRates, indicators);
+            // if this is the root or the indicator is true then take the raw rate as this branch's rate;
+            if (node.isRoot() || indicators[nodeNumber]) {
+                branchRates[nodeNumber] = rawRates[nodeNumber];
+            } else {   // if indicator is false then take branchRate of parent. Traversal is parent-first, so this will always have been populated already.
+                branchRates[nodeNumber] = branchRates[node.getParent().getIndex()];
+            }
         }
     }
 
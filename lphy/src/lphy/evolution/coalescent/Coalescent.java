@@ -1,5 +1,6 @@
 package lphy.evolution.coalescent;
 
+import lphy.evolution.tree.ArrayTimeTree;
 import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
 import lphy.core.distributions.Exp;
@@ -34,14 +35,12 @@ public class Coalescent implements GenerativeDistribution<TimeTree> {
     @GeneratorInfo(name="Coalescent", description="The Kingman coalescent distribution over tip-labelled time trees.")
     public RandomVariable<TimeTree> sample() {
 
-        TimeTree tree = new TimeTree();
+        int n = this.n.value();
+        ArrayTimeTree arrayTree = new ArrayTimeTree(n);
 
-        List<TimeTreeNode> activeNodes = new ArrayList<>();
-
-        for (int i = 0; i < n.value(); i++) {
-            TimeTreeNode node = new TimeTreeNode(i + "", tree);
-            node.setLeafIndex(i);
-            activeNodes.add(node);
+        LineagePool activeNodes = new LineagePool(n);
+        for (int i = 0; i < n; i++) {
+            activeNodes.add(arrayTree.addLeaf(null, 0.0));
         }
 
         double time = 0.0;
@@ -49,21 +48,19 @@ public class Coalescent implements GenerativeDistribution<TimeTree> {
 
         while (activeNodes.size() > 1) {
             int k = activeNodes.size();
-
-            TimeTreeNode a = activeNodes.remove(random.nextInt(activeNodes.size()));
-            TimeTreeNode b = activeNodes.remove(random.nextInt(activeNodes.size()));
-
             double rate = (k * (k - 1.0))/(theta * 2.0);
 
+            int a = activeNodes.removeRandom(random);
+            int b = activeNodes.removeRandom(random);
+
             // random exponential variate
             double x = - Math.log(random.nextDouble()) / rate;
             time += x;
 
-            TimeTreeNode parent = new TimeTreeNode(time, new TimeTreeNode[] {a, b});
-            activeNodes.add(parent);
+            activeNodes.add(arrayTree.addInternalNode(time, a, b));
         }
 
-        tree.setRoot(activeNodes.get(0));
+        TimeTree tree = arrayTree.toTimeTree();
 
         return new RandomVariable<>("\u03C8", tree, this);
     }
@@ -0,0 +1,46 @@
+package lphy.evolution.coalescent;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.Arrays;
+
+/**
+ * The node numbers of the active lineages during a coalescent simulation. Lineages are drawn uniformly
+ * at random and removed by moving the last lineage into the gap, so adding and drawing are constant time.
+ */
+class LineagePool {
+
+    private int[] nodes;
+    private int size = 0;
+
+    LineagePool(int capacity) {
+        nodes = new int[Math.max(1, capacity)];
+    }
+
+    void add(int node) {
+        if (size == nodes.length) nodes = Arrays.copyOf(nodes, size * 2);
+        nodes[size] = node;
+        size += 1;
+    }
+
+    /**
+     * Removes a lineage chosen uniformly at random.
+     *
+     * @return the node number of the removed lineage.
+     */
+    int removeRandom(RandomGenerator random) {
+        int i = random.nextInt(size);
+        int node = nodes[i];
+        size -= 1;
+        nodes[i] = nodes[size];
+        return node;
+    }
+
+    int get(int i) {
+        return nodes[i];
+    }
+
+    int size() {
+        return size;
+    }
+}
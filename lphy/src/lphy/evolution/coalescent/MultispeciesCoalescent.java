@@ -1,5 +1,6 @@
 package lphy.evolution.coalescent;
 
+import lphy.evolution.tree.ArrayTimeTree;
 import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
 import lphy.core.distributions.Utils;
@@ -40,78 +41,228 @@ public class MultispeciesCoalescent implements GenerativeDistribution<TimeTree>
     @GeneratorInfo(name = "MultispeciesCoalescent", description = "The Kingman coalescent distribution within each branch of species tree gives rise to a distribution over gene trees conditional on the species tree.")
     public RandomVariable<TimeTree> sample() {
 
-        TimeTree geneTree = new TimeTree();
+        SpeciesBranches branches = new SpeciesBranches(S.value(), theta.value(), n.value());
 
-        List<List<TimeTreeNode>> activeNodes = new ArrayList<>();
+        TimeTree geneTree = branches.simulateGeneTree(random);
 
-        int i = 0;
-        for (int sp = 0; sp < n.value().length; sp++) {
-            List<TimeTreeNode> taxaInSp = new ArrayList<>();
-            activeNodes.add(taxaInSp);
-            for (int k = 0; k < n.value()[sp]; k++) {
-                TimeTreeNode node = new TimeTreeNode(sp + separator + k, geneTree);
-
-                // set age to the age of the species.
-                node.setAge(S.value().getNodeByIndex(sp).getAge());
+        return new RandomVariable<>("geneTree", geneTree, this);
+    }
 
-                // set node index to i
-                node.setLeafIndex(i);
+    /**
+     * The species tree flattened into arrays, with the population size and time span of each branch and the
+     * ids and ages of the gene tree leaves, so that any number of gene trees can be simulated within it
+     * without walking the species tree or reading the parameters again.
+     */
+    static class SpeciesBranches {
+
+        // species node indices in post-order, so each branch is simulated after its child branches
+        final int[] postorder;
+        final int[][] children;
+        // the parent species node index, or -1 for the root
+        final int[] parent;
+        final double[] startAge;
+        // the age of the parent species node, or infinity for the root branch
+        final double[] endAge;
+        final double[] theta;
+
+        final int[] sampleCount;
+        final String[] leafIds;
+        final int leafCount;
+        final Map<String, Integer> speciesOfLeaf = new HashMap<>();
+
+        SpeciesBranches(TimeTree S, Double[] allThetas, Integer[] n) {
+            int nodeCount = S.getNodeCount();
+
+            postorder = S.getPostorder();
+            children = new int[nodeCount][];
+            parent = new int[nodeCount];
+            startAge = new double[nodeCount];
+            endAge = new double[nodeCount];
+            theta = new double[nodeCount];
+
+            for (int i = 0; i < nodeCount; i++) {
+                TimeTreeNode spNode = S.getNodeByIndex(i);
+                List<TimeTreeNode> childNodes = spNode.isLeaf() ? Collections.emptyList() : spNode.getChildren();
+                children[i] = new int[childNodes.size()];
+                for (int j = 0; j < children[i].length; j++) {
+                    children[i][j] = childNodes.get(j).getIndex();
+                }
+                parent[i] = spNode.isRoot() ? -1 : spNode.getParent().getIndex();
+                startAge[i] = spNode.getAge();
+                endAge[i] = spNode.isRoot() ? Double.POSITIVE_INFINITY : spNode.getParent().getAge();
+                theta[i] = allThetas[i];
+            }
 
-                taxaInSp.add(node);
-                i += 1;
+            sampleCount = new int[n.length];
+            int count = 0;
+            for (int sp = 0; sp < n.length; sp++) {
+                sampleCount[sp] = n[sp];
+                count += n[sp];
+            }
+            leafCount = count;
+
+            leafIds = new String[leafCount];
+            int i = 0;
+            for (int sp = 0; sp < n.length; sp++) {
+                for (int k = 0; k < n[sp]; k++) {
+                    leafIds[i] = sp + separator + k;
+                    speciesOfLeaf.put(leafIds[i], sp);
+                    i += 1;
+                }
             }
         }
-        System.out.println("gene tree has " + i + " nodes");
 
-        List<TimeTreeNode> root = doSpeciesTreeBranch(S.value().getRoot(), activeNodes, theta.value());
-
-        if (root.size() != 1) throw new RuntimeException();
-
-        geneTree.setRoot(root.get(0));
+        /**
+         * @return a gene tree whose leaves are numbered in species order, simulated with the given random generator.
+         */
+        TimeTree simulateGeneTree(RandomGenerator random) {
+
+            ArrayTimeTree geneTree = new ArrayTimeTree(leafCount);
+
+            LineagePool[] activeNodes = new LineagePool[children.length];
+            int i = 0;
+            for (int sp = 0; sp < sampleCount.length; sp++) {
+                activeNodes[sp] = new LineagePool(sampleCount[sp]);
+                for (int k = 0; k < sampleCount[sp]; k++) {
+                    // leaves have the age of their species
+                    activeNodes[sp].add(geneTree.addLeaf(leafIds[i], startAge[sp]));
+                    i += 1;
+                }
+            }
 
-        return new RandomVariable<>("geneTree", geneTree, this);
-    }
+            LineagePool root = null;
+            for (int spNode : postorder) {
+                LineagePool lineages = activeNodes[spNode];
+                if (children[spNode].length > 0) {
+                    int capacity = 0;
+                    for (int child : children[spNode]) {
+                        capacity += activeNodes[child].size();
+                    }
+                    lineages = new LineagePool(capacity);
+                    for (int child : children[spNode]) {
+                        LineagePool childLineages = activeNodes[child];
+                        for (int j = 0; j < childLineages.size(); j++) {
+                            lineages.add(childLineages.get(j));
+                        }
+                        activeNodes[child] = null;
+                    }
+                } else if (lineages == null) {
+                    lineages = new LineagePool(0);
+                }
+
+                double time = startAge[spNode];
+                double end = endAge[spNode];
+                double theta = this.theta[spNode];
+
+                while (lineages.size() > 1 && time < end) {
+
+                    int k = lineages.size();
+                    double rate = (k * (k - 1.0)) / (theta * 2.0);
+
+                    // random exponential variate
+                    double x = -Math.log(random.nextDouble()) / rate;
+                    time += x;
+
+                    if (time < end) {
+                        int a = lineages.removeRandom(random);
+                        int b = lineages.removeRandom(random);
+                        lineages.add(geneTree.addInternalNode(time, a, b));
+                    }
+                }
+                activeNodes[spNode] = lineages;
+                root = lineages;
+            }
 
-    private List<TimeTreeNode> doSpeciesTreeBranch(TimeTreeNode spNode, List<List<TimeTreeNode>> allLeafActiveNodes, Double[] allThetas) {
+            if (root == null || root.size() != 1) throw new RuntimeException();
 
-        List<TimeTreeNode> activeNodes;
-        if (!spNode.isLeaf()) {
-            activeNodes = new ArrayList<>();
-            for (TimeTreeNode child : spNode.getChildren()) {
-                activeNodes.addAll(doSpeciesTreeBranch(child, allLeafActiveNodes, allThetas));
-            }
-        } else {
-            activeNodes = allLeafActiveNodes.get(spNode.getIndex());
+            return geneTree.toTimeTree();
         }
 
-        double time = spNode.getAge();
-        double theta = allThetas[spNode.getIndex()];
+        /**
+         * @return the log density of a gene tree whose leaves are named as in simulateGeneTree, or negative
+         * infinity if the gene tree does not fit within the species tree. As in Coalescent, each coalescence
+         * contributes the rate 1/theta of the pair of lineages that coalesce.
+         */
+        double logDensity(TimeTree geneTree) {
 
-        while (activeNodes.size() > 1 && (spNode.getParent() == null || time < spNode.getParent().getAge())) {
+            if (geneTree.n() != leafCount) {
+                throw new IllegalArgumentException("The gene tree has " + geneTree.n() + " leaves but " + leafCount + " were sampled.");
+            }
 
-            int k = activeNodes.size();
-            double rate = (k * (k - 1.0)) / (theta * 2.0);
+            // the species branch of each gene tree node, and the number of leaves and coalescences in each branch
+            int[] species = new int[geneTree.getNodeCount()];
+            int[] leaves = new int[children.length];
+            int[] coalescences = new int[children.length];
+            for (int g : geneTree.getPostorder()) {
+                TimeTreeNode node = geneTree.getNodeByIndex(g);
+                int sp;
+                if (node.isLeaf()) {
+                    Integer leafSpecies = speciesOfLeaf.get(node.getId());
+                    if (leafSpecies == null) throw new IllegalArgumentException("Gene tree leaf " + node.getId() + " is not in any species.");
+                    sp = leafSpecies;
+                    leaves[sp] += 1;
+                } else {
+                    sp = species[node.getChildren().get(0).getIndex()];
+                    for (TimeTreeNode child : node.getChildren()) {
+                        sp = mrca(sp, species[child.getIndex()]);
+                    }
+                    while (endAge[sp] <= node.getAge()) sp = parent[sp];
+                    if (node.getAge() < startAge[sp]) return Double.NEGATIVE_INFINITY;
+                    coalescences[sp] += 1;
+                }
+                species[g] = sp;
+            }
 
-            // random exponential variate
-            double x = -Math.log(random.nextDouble()) / rate;
-            time += x;
+            double[][] ages = new double[children.length][];
+            for (int sp = 0; sp < children.length; sp++) {
+                ages[sp] = new double[coalescences[sp]];
+                coalescences[sp] = 0;
+            }
+            for (int g = 0; g < species.length; g++) {
+                TimeTreeNode node = geneTree.getNodeByIndex(g);
+                if (!node.isLeaf()) {
+                    ages[species[g]][coalescences[species[g]]] = node.getAge();
+                    coalescences[species[g]] += 1;
+                }
+            }
 
-            if (spNode.getParent() == null || time < spNode.getParent().getAge()) {
-                TimeTreeNode a = activeNodes.remove(random.nextInt(activeNodes.size()));
-                TimeTreeNode b = activeNodes.remove(random.nextInt(activeNodes.size()));
-                TimeTreeNode parent = new TimeTreeNode(time, new TimeTreeNode[]{a, b});
-                activeNodes.add(parent);
+            // the number of gene lineages leaving the top of each species branch
+            int[] lineagesOut = new int[children.length];
+            double logDensity = 0;
+            for (int sp : postorder) {
+                int k = leaves[sp];
+                for (int child : children[sp]) {
+                    k += lineagesOut[child];
+                }
+
+                Arrays.sort(ages[sp]);
+                double time = startAge[sp];
+                for (double age : ages[sp]) {
+                    logDensity -= k * (k - 1) * (age - time) / (2 * theta[sp]) + Math.log(theta[sp]);
+                    time = age;
+                    k -= 1;
+                }
+                // no coalescence between the last one and the top of the branch
+                if (endAge[sp] < Double.POSITIVE_INFINITY) {
+                    logDensity -= k * (k - 1) * (endAge[sp] - time) / (2 * theta[sp]);
+                }
+                lineagesOut[sp] = k;
             }
+            return logDensity;
         }
 
-        return activeNodes;
+        private int mrca(int a, int b) {
+            while (a != b) {
+                if (startAge[a] < startAge[b] || (startAge[a] == startAge[b] && parent[a] >= 0)) a = parent[a];
+                else b = parent[b];
+            }
+            return a;
+        }
     }
 
     @Override
     public double logDensity(TimeTree timeTree) {
-
-        // TODO
-        return 0.0;
+        return new SpeciesBranches(S.value(), theta.value(), n.value()).logDensity(timeTree);
     }
 
     @Override
@@ -0,0 +1,160 @@
+package lphy.evolution.coalescent;
+
+import lphy.evolution.tree.TimeTree;
+import lphy.core.distributions.Utils;
+import lphy.graphicalModel.*;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Independent gene trees for many loci from the multispecies coalescent, simulated in one call.
+ * The species tree and parameters are read once for all loci. Each locus has its own random stream,
+ * seeded in locus order, so the gene trees do not depend on the number of threads.
+ */
+public class MultispeciesCoalescentMulti implements GenerativeDistribution<TimeTree[]> {
+
+    private final String thetaParamName;
+    private final String nParamName;
+    private final String SParamName;
+    private final String lociParamName;
+    private final String threadsParamName;
+    private Value<Double[]> theta;
+    private Value<Integer[]> n;
+    private Value<TimeTree> S;
+    private Value<Integer> loci;
+    private Value<Integer> threads;
+
+    RandomGenerator random;
+
+    public MultispeciesCoalescentMulti(@ParameterInfo(name = "theta", description = "effective population sizes, one for each species (both extant and ancestral).") Value<Double[]> theta,
+                                       @ParameterInfo(name = "n", description = "the number of sampled taxa in the gene tree for each extant species.") Value<Integer[]> n,
+                                       @ParameterInfo(name = "S", description = "the species tree. ") Value<TimeTree> S,
+                                       @ParameterInfo(name = "loci", description = "the number of independent gene trees to simulate.") Value<Integer> loci,
+                                       @ParameterInfo(name = "threads", description = "the number of threads to simulate the loci on, default 1.", optional = true) Value<Integer> threads) {
+        this.theta = theta;
+        this.n = n;
+        this.S = S;
+        this.loci = loci;
+        this.threads = threads;
+        this.random = Utils.getRandom();
+
+        thetaParamName = getParamName(0);
+        nParamName = getParamName(1);
+        SParamName = getParamName(2);
+        lociParamName = getParamName(3);
+        threadsParamName = getParamName(4);
+    }
+
+    @GeneratorInfo(name = "MultispeciesCoalescent", description = "Independent gene trees for a number of loci, each from the Kingman coalescent within the branches of the species tree.")
+    public RandomVariable<TimeTree[]> sample() {
+
+        MultispeciesCoalescent.SpeciesBranches branches = new MultispeciesCoalescent.SpeciesBranches(S.value(), theta.value(), n.value());
+
+        int lociCount = loci.value();
+        int threadCount = threads == null ? 1 : threads.value();
+        if (threadCount < 1) throw new IllegalArgumentException(threadsParamName + " must be at least 1, but was " + threadCount);
+
+        // draw locus seeds in locus order
+        long[] seeds = new long[lociCount];
+        for (int i = 0; i < lociCount; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        TimeTree[] geneTrees = new TimeTree[lociCount];
+
+        if (threadCount == 1) {
+            simulateLoci(branches, seeds, geneTrees, 0, lociCount);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                int blockSize = (lociCount + threadCount - 1) / threadCount;
+                List<Future<?>> blocks = new ArrayList<>();
+                for (int start = 0; start < lociCount; start += blockSize) {
+                    int blockStart = start;
+                    int blockEnd = Math.min(lociCount, start + blockSize);
+                    blocks.add(executor.submit(() -> simulateLoci(branches, seeds, geneTrees, blockStart, blockEnd)));
+                }
+                for (Future<?> block : blocks) {
+                    block.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Gene tree simulation was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Gene tree simulation failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        return new RandomVariable<>("geneTrees", geneTrees, this);
+    }
+
+    private static void simulateLoci(MultispeciesCoalescent.SpeciesBranches branches, long[] seeds, TimeTree[] geneTrees, int start, int end) {
+        MersenneTwister locusRandom = new MersenneTwister();
+        for (int i = start; i < end; i++) {
+            locusRandom.setSeed(seeds[i]);
+            geneTrees[i] = branches.simulateGeneTree(locusRandom);
+        }
+    }
+
+    @Override
+    public double logDensity(TimeTree[] timeTrees) {
+
+        MultispeciesCoalescent.SpeciesBranches branches = new MultispeciesCoalescent.SpeciesBranches(S.value(), theta.value(), n.value());
+
+        // the loci are independent
+        double logDensity = 0;
+        for (TimeTree geneTree : timeTrees) {
+            logDensity += branches.logDensity(geneTree);
+        }
+        return logDensity;
+    }
+
+    @Override
+    public SortedMap<String, Value> getParams() {
+        SortedMap<String, Value> map = new TreeMap<>();
+        map.put(thetaParamName, theta);
+        map.put(nParamName, n);
+        map.put(SParamName, S);
+        map.put(lociParamName, loci);
+        if (threads != null) map.put(threadsParamName, threads);
+        return map;
+    }
+
+    @Override
+    public void setParam(String paramName, Value value) {
+        if (paramName.equals(thetaParamName)) theta = value;
+        else if (paramName.equals(nParamName)) n = value;
+        else if (paramName.equals(SParamName)) S = value;
+        else if (paramName.equals(lociParamName)) loci = value;
+        else if (paramName.equals(threadsParamName)) threads = value;
+        else throw new RuntimeException("Unrecognised parameter name: " + paramName);
+    }
+
+    public String toString() {
+        return getName();
+    }
+
+    public Value<TimeTree> getSpeciesTree() {
+        return S;
+    }
+
+    public Value<Double[]> getPopulationSizes() {
+        return theta;
+    }
+
+    public Value<Integer[]> getN() {
+        return n;
+    }
+
+    public Value<Integer> getLoci() {
+        return loci;
+    }
+}
@@ -1,12 +1,11 @@
 package lphy.evolution.coalescent;
 
+import lphy.evolution.tree.ArrayTimeTree;
 import lphy.evolution.tree.TimeTree;
-import lphy.evolution.tree.TimeTreeNode;
 import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.sql.Time;
 import java.util.*;
 
 /**
@@ -45,31 +44,30 @@ public class SerialCoalescent implements GenerativeDistribution<TimeTree> {
     @GeneratorInfo(name="Coalescent", description="The serially sampled Kingman coalescent distribution over tip-labelled time trees.")
     public RandomVariable<TimeTree> sample() {
 
-        TimeTree tree = new TimeTree();
+        ArrayTimeTree arrayTree = createLeafTaxa();
+        int leafCount = arrayTree.getLeafCount();
 
-        List<TimeTreeNode> leafNodes = createLeafTaxa(tree);
-        List<TimeTreeNode> activeNodes = new ArrayList<>();
-        List<TimeTreeNode> leavesToBeAdded = new ArrayList<>();
+        // the leaves in order of increasing age; those not yet sampled are from nextLeaf onwards
+        int[] leavesByAge = sortLeavesByAge(arrayTree);
+
+        LineagePool activeNodes = new LineagePool(leafCount);
 
         double time = 0.0;
 
-        for (TimeTreeNode leaf : leafNodes) {
-            if (leaf.getAge() <= time) {
-                activeNodes.add(leaf);
-            } else {
-                leavesToBeAdded.add(leaf);
-            }
+        int nextLeaf = 0;
+        while (nextLeaf < leafCount && arrayTree.getAge(leavesByAge[nextLeaf]) <= time) {
+            activeNodes.add(leavesByAge[nextLeaf]);
+            nextLeaf += 1;
         }
-        leavesToBeAdded.sort(
-                (o1, o2) -> Double.compare(o2.getAge(), o1.getAge())); // REVERSE ORDER - youngest age at end of list
 
         double theta = this.theta.value();
 
-        while ((activeNodes.size() + leavesToBeAdded.size()) > 1) {
+        while ((activeNodes.size() + leafCount - nextLeaf) > 1) {
             int k = activeNodes.size();
 
-            if (k == 1) {
-                time = leavesToBeAdded.get(leavesToBeAdded.size()-1).getAge();
+            // with fewer than two lineages nothing can coalesce before the next leaf is sampled
+            if (k < 2) {
+                time = arrayTree.getAge(leavesByAge[nextLeaf]);
             } else {
 
                 // draw next time;
@@ -77,54 +75,71 @@ public class SerialCoalescent implements GenerativeDistribution<TimeTree> {
                 double x = -Math.log(random.nextDouble()) / rate;
                 time += x;
 
-                if (leavesToBeAdded.size() > 0 && time > leavesToBeAdded.get(leavesToBeAdded.size()-1).getAge()) {
-                    time = leavesToBeAdded.get(leavesToBeAdded.size()-1).getAge();
+                if (nextLeaf < leafCount && time > arrayTree.getAge(leavesByAge[nextLeaf])) {
+                    time = arrayTree.getAge(leavesByAge[nextLeaf]);
                 } else {
 
                     // do coalescence
-                    TimeTreeNode a = activeNodes.remove(random.nextInt(activeNodes.size()));
-                    TimeTreeNode b = activeNodes.remove(random.nextInt(activeNodes.size()));
+                    int a = activeNodes.removeRandom(random);
+                    int b = activeNodes.removeRandom(random);
 
-                    TimeTreeNode parent = new TimeTreeNode(time, new TimeTreeNode[]{a, b});
-                    activeNodes.add(parent);
+                    activeNodes.add(arrayTree.addInternalNode(time, a, b));
                 }
             }
 
-            while (leavesToBeAdded.size() > 0 && leavesToBeAdded.get(leavesToBeAdded.size()-1).getAge() == time) {
-                TimeTreeNode youngest = leavesToBeAdded.remove(leavesToBeAdded.size()-1);
-                activeNodes.add(youngest);
+            while (nextLeaf < leafCount && arrayTree.getAge(leavesByAge[nextLeaf]) == time) {
+                activeNodes.add(leavesByAge[nextLeaf]);
+                nextLeaf += 1;
             }
         }
 
-        tree.setRoot(activeNodes.get(0));
+        TimeTree tree = arrayTree.toTimeTree();
 
         return new RandomVariable<>("\u03C8", tree, this);
     }
 
-    private List<TimeTreeNode> createLeafTaxa(TimeTree tree) {
-        List<TimeTreeNode> leafNodes = new ArrayList<>();
+    /**
+     * @return the leaf node numbers in order of increasing age, with leaves of equal age in leaf order.
+     */
+    private static int[] sortLeavesByAge(ArrayTimeTree tree) {
+        Integer[] leaves = new Integer[tree.getLeafCount()];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = i;
+        }
+        // the sort is stable, so leaves of equal age stay in leaf order
+        Arrays.sort(leaves, Comparator.comparingDouble(tree::getAge));
+
+        int[] leavesByAge = new int[leaves.length];
+        for (int i = 0; i < leaves.length; i++) {
+            leavesByAge[i] = leaves[i];
+        }
+        return leavesByAge;
+    }
+
+    /**
+     * @return a tree holding only the leaves, numbered 0 to n-1 in the order they are given.
+     */
+    private ArrayTimeTree createLeafTaxa() {
 
         if (ages != null) {
 
             Double[] leafAges = ages.value();
 
+            ArrayTimeTree tree = new ArrayTimeTree(leafAges.length);
             for (int i = 0; i < leafAges.length; i++) {
-                TimeTreeNode node = new TimeTreeNode(i+"", tree);
-                node.setAge(leafAges[i]);
-                leafNodes.add(node);
+                tree.addLeaf(i+"", leafAges[i]);
             }
-            return leafNodes;
+            return tree;
 
         } else if (taxaAges != null) {
 
             Map<String, Double> leafTaxaAges = taxaAges.value();
 
+            ArrayTimeTree tree = new ArrayTimeTree(leafTaxaAges.size());
             for (Map.Entry<String, Double> entry : leafTaxaAges.entrySet()) {
-                TimeTreeNode node = new TimeTreeNode(entry.getKey(), tree);
-                node.setAge(entry.getValue());
-                leafNodes.add(node);
+                tree.addLeaf(entry.getKey(), entry.getValue());
             }
-            return leafNodes;
+            return tree;
 
         } else throw new RuntimeException("Expected either " + agesParamName + " or " + taxaAgesParamName);
     }
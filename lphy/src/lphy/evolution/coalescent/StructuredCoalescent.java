@@ -2,6 +2,7 @@ package lphy.evolution.coalescent;
 
 import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
+import lphy.core.distributions.FenwickTree;
 import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
 import lphy.graphicalModel.types.DoubleArray2DValue;
@@ -31,8 +32,6 @@ public class StructuredCoalescent implements GenerativeDistribution<TimeTree> {
         return migrationCount;
     }
 
-    enum EventType {coalescent, migration}
-
     public static final String populationLabel = "deme";
 
 
@@ -73,60 +72,71 @@ public class StructuredCoalescent implements GenerativeDistribution<TimeTree> {
         return new RandomVariable<>("\u03C8", tree, this);
     }
 
+    /**
+     * Simulates coalescent and migration events backwards in time until one lineage is left or stopTime is reached.
+     * The total event rate of a deme depends only on its own lineage count, so the deme rates are kept in a
+     * Fenwick tree and each event only updates the demes it changes, making an event O(log D) in the number of demes.
+     */
     private List<TimeTreeNode> simulateStructuredCoalescentForest(TimeTree tree, List<List<TimeTreeNode>> nodes, Double[][] popSizesMigrationRates, double stopTime) {
 
-        //diagonals are coalescent rates, off-diagonals are migration rates
-        double[][] rates = new double[nodes.size()][nodes.size()];
-        double totalRate = populateRateMatrix(nodes, popSizesMigrationRates, rates);
+        int demeCount = nodes.size();
+
+        double[][] cumulativeMigration = cumulativeMigration(popSizesMigrationRates);
+
+        FenwickTree demeRates = new FenwickTree(demeCount);
+        for (int i = 0; i < demeCount; i++) {
+            updateDemeRate(demeRates, i, nodes.get(i).size(), popSizesMigrationRates, cumulativeMigration);
+        }
 
         double time = 0.0;
 
-        int nodeNumber = getTotalNodeCount(nodes);
+        int nodeCount = getTotalNodeCount(nodes);
+        int nodeNumber = nodeCount;
 
-        while (time < stopTime && getTotalNodeCount(nodes) > 1) {
+        while (time < stopTime && nodeCount > 1) {
 
-            SCEvent event = selectRandomEvent(rates, totalRate, time);
-            //System.out.println("Recieved an event of type " + event.type);
+            double totalRate = demeRates.total();
+            if (totalRate <= 0.0) {
+                throw new RuntimeException("The remaining " + nodeCount + " lineages are in demes with no migration between them, so they can never coalesce.");
+            }
+            int[] event = selectEvent(demeRates, nodes, popSizesMigrationRates, cumulativeMigration, random);
+            int pop = event[0];
+            int toPop = event[1];
 
-            if (event.type == EventType.coalescent) {
+            double V = random.nextDouble();
+            time += -Math.log(V) / totalRate;
 
-                //System.out.println("doing a coalescent event in population " + event.pop + " which has " + nodes.get(event.pop).size() + " nodes.");
+            if (toPop == pop) {
 
                 // coalescent
-                TimeTreeNode node1 = selectRandomNode(nodes.get(event.pop));
-                TimeTreeNode node2 = selectRandomNode(nodes.get(event.pop));
+                TimeTreeNode node1 = selectRandomNode(nodes.get(pop));
+                TimeTreeNode node2 = selectRandomNode(nodes.get(pop));
 
                 TimeTreeNode parent = new TimeTreeNode(nodeNumber + "", tree);
                 parent.setIndex(nodeNumber);
-                parent.setAge(event.time);
-                parent.setMetaData(populationLabel, event.pop);
+                parent.setAge(time);
+                parent.setMetaData(populationLabel, pop);
                 parent.addChild(node1);
                 parent.addChild(node2);
 
-                time = event.time;
-
-                nodes.get(event.pop).add(parent);
+                nodes.get(pop).add(parent);
+                nodeCount -= 1;
 
             } else {
                 // migration
-
-                if (event.pop == event.toPop)
-                    throw new RuntimeException("migration must be between distinct populations");
-
-                TimeTreeNode migrant = selectRandomNode(nodes.get(event.pop));
+                TimeTreeNode migrant = selectRandomNode(nodes.get(pop));
 
                 TimeTreeNode migrantsParent = new TimeTreeNode(nodeNumber + "", tree);
                 migrantsParent.setIndex(nodeNumber);
-                migrantsParent.setAge(event.time);
-                migrantsParent.setMetaData(populationLabel, event.toPop);
+                migrantsParent.setAge(time);
+                migrantsParent.setMetaData(populationLabel, toPop);
 
                 migrantsParent.addChild(migrant);
 
-                time = event.time;
-
-                nodes.get(event.toPop).add(migrantsParent);
+                nodes.get(toPop).add(migrantsParent);
+                updateDemeRate(demeRates, toPop, nodes.get(toPop).size(), popSizesMigrationRates, cumulativeMigration);
             }
-            totalRate = populateRateMatrix(nodes, popSizesMigrationRates, rates);
+            updateDemeRate(demeRates, pop, nodes.get(pop).size(), popSizesMigrationRates, cumulativeMigration);
             nodeNumber += 1;
         }
 
@@ -138,82 +148,87 @@ public class StructuredCoalescent implements GenerativeDistribution<TimeTree> {
         return rootNodes;
     }
 
-    private int getTotalNodeCount(List<List<TimeTreeNode>> nodes) {
-        int count = 0;
-        for (List<TimeTreeNode> nodeList : nodes) {
-            count += nodeList.size();
+    /**
+     * @return cumulativeMigration[i][j], the per-lineage rate of migrating from deme i to demes 0 to j.
+     */
+    static double[][] cumulativeMigration(Double[][] popSizesMigrationRates) {
+        int demeCount = popSizesMigrationRates.length;
+        double[][] cumulativeMigration = new double[demeCount][demeCount];
+        for (int i = 0; i < demeCount; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < demeCount; j++) {
+                if (i != j) {
+                    // off-diagonal migration rates are in units of expected migrants per generation (thus division by popSizei)
+                    sum += popSizesMigrationRates[i][j] * popSizesMigrationRates[j][j] / popSizesMigrationRates[i][i];
+                }
+                cumulativeMigration[i][j] = sum;
+            }
         }
-        return count;
+        return cumulativeMigration;
     }
 
-    private TimeTreeNode selectRandomNode(List<TimeTreeNode> nodes) {
-        int index = Utils.getRandom().nextInt(nodes.size());
-        TimeTreeNode node = nodes.remove(index);
-        return node;
-    }
+    /**
+     * Draws the next event: a deme with probability proportional to its total rate, then coalescence in that deme
+     * or migration of one of its lineages to another deme.
+     * @return the deme of the event and the deme it moves a lineage to, the same deme for a coalescence.
+     */
+    static int[] selectEvent(FenwickTree demeRates, List<List<TimeTreeNode>> nodes, Double[][] popSizesMigrationRates,
+                             double[][] cumulativeMigration, RandomGenerator random) {
 
-    SCEvent selectRandomEvent(double[][] rates, double totalRate, double time) {
+        int pop = demeRates.sample(random);
+        int sampleSize = nodes.get(pop).size();
 
-        double U = random.nextDouble() * totalRate;
+        double coalescentRate = coalescentRate(sampleSize, popSizesMigrationRates[pop][pop]);
+        double U = random.nextDouble() * demeRates.get(pop);
 
-        for (int i = 0; i < rates.length; i++) {
-            for (int j = 0; j < rates.length; j++) {
-                if (U > rates[i][j]) {
-                    U -= rates[i][j];
-                } else {
-                    double V = random.nextDouble();
-                    double etime = time + (-Math.log(V) / totalRate);
-                    return new SCEvent(i, j, etime);
-                }
-            }
-        }
-        throw new RuntimeException();
+        if (U < coalescentRate) return new int[]{pop, pop};
+        return new int[]{pop, selectDestination(cumulativeMigration[pop], (U - coalescentRate) / sampleSize)};
     }
 
-    static double populateRateMatrix(List<List<TimeTreeNode>> nodes, Double[][] popSizesMigrationRates, double[][] rates) {
+    private static double coalescentRate(int sampleSize, double popSize) {
+        if (sampleSize < 2) return 0.0;
+        return sampleSize * (sampleSize - 1.0) / 2.0 / popSize;
+    }
 
-        double totalRate = 0.0;
+    static void updateDemeRate(FenwickTree demeRates, int pop, int sampleSize, Double[][] popSizesMigrationRates, double[][] cumulativeMigration) {
+        double migrationRate = sampleSize * cumulativeMigration[pop][cumulativeMigration.length - 1];
+        demeRates.set(pop, coalescentRate(sampleSize, popSizesMigrationRates[pop][pop]) + migrationRate);
+    }
 
-        // coalescent rates
-        for (int i = 0; i < rates.length; i++) {
-            double popSizei = popSizesMigrationRates[i][i];
-            int sampleSizei = nodes.get(i).size();
-            if (sampleSizei < 2) {
-                rates[i][i] = 0.0;
-            } else {
-                rates[i][i] = (double) CombinatoricsUtils.binomialCoefficient(sampleSizei, 2) / popSizei;
-            }
-            for (int j = 0; j < rates[i].length; j++) {
-                double popSizej = popSizesMigrationRates[j][j];
-                if (i != j) {
-                    // off-diagonal migration rates are in units of expected migrants per generation (thus division by popSizei)
-                    rates[i][j] = (double) nodes.get(i).size() * (popSizesMigrationRates[i][j] * popSizej) / popSizei;
-                }
-                totalRate += rates[i][j];
-            }
+    /**
+     * @return the first deme whose cumulative migration rate exceeds u, skipping demes with no migration rate.
+     */
+    private static int selectDestination(double[] cumulativeMigration, double u) {
+        int low = 0;
+        int high = cumulativeMigration.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeMigration[mid] <= u) low = mid + 1;
+            else high = mid;
         }
-
-        return totalRate;
+        // rounding may put u at the very end; step back to the last deme with a migration rate
+        while (low > 0 && cumulativeMigration[low] == cumulativeMigration[low - 1]) low -= 1;
+        return low;
     }
 
-    class SCEvent {
-
-        int pop;
-        int toPop;
-        double time;
-        EventType type;
-
-        public SCEvent(int pop1, int pop2, double time) {
-            this.pop = pop1;
-            this.toPop = pop2;
-            this.time = time;
-            if (pop == toPop) {
-                type = EventType.coalescent;
-            } else {
-                type = EventType.migration;
-            }
+    private int getTotalNodeCount(List<List<TimeTreeNode>> nodes) {
+        int count = 0;
+        for (List<TimeTreeNode> nodeList : nodes) {
+            count += nodeList.size();
         }
+        return count;
+    }
 
+    /**
+     * Removes a node chosen uniformly at random, moving the last node into its place.
+     */
+    private TimeTreeNode selectRandomNode(List<TimeTreeNode> nodes) {
+        int index = random.nextInt(nodes.size());
+        int last = nodes.size() - 1;
+        TimeTreeNode node = nodes.get(index);
+        nodes.set(index, nodes.get(last));
+        nodes.remove(last);
+        return node;
     }
 
     @Override
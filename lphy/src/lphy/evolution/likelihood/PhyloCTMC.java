@@ -3,14 +3,21 @@ package lphy.evolution.likelihood;
 import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
 import lphy.evolution.alignment.Alignment;
-import lphy.core.distributions.Categorical;
+import lphy.evolution.alignment.AlignmentSink;
+import lphy.evolution.substitutionmodel.HasTransitionProbabilities;
+import lphy.core.distributions.AliasTable;
 import lphy.core.distributions.Utils;
 import lphy.graphicalModel.*;
 import org.apache.commons.math3.linear.*;
+import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.util.FastMath;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Created by adru001 on 2/02/20.
@@ -24,6 +31,10 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
     Value<Double[]> siteRates;
     Value<Double[]> branchRates;
     Value<Integer> L;
+    Value<Integer[]> siteCategories;
+    Value<Double[]> categoryRates;
+    Value<Integer> columnBlockSize;
+    Value<Integer> threads;
     RandomGenerator random;
 
     public final String treeParamName;
@@ -33,11 +44,19 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
     public final String siteRatesParamName;
     public final String branchRatesParamName;
     public final String LParamName;
+    public final String siteCategoriesParamName;
+    public final String categoryRatesParamName;
+    public final String columnBlockSizeParamName;
+    public final String threadsParamName;
 
     int numStates;
 
-    // these are all initialized in setup method.
-    private EigenDecomposition decomposition;
+    // these are all initialized in setup method, and reused by later samples while Q is unchanged.
+    private double[][] currentQ;
+    Value<Double[]> equilibriumFreqs;
+    // closed-form transition probabilities provided by the function that produced Q, if any
+    private HasTransitionProbabilities closedForm;
+    EigenDecomposition decomposition;
     private double[][] Ievc;
     private double[][] Evec;
     private Value<Double[]> rootFreqs;
@@ -46,13 +65,37 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
     private double[][] iexp;
     private double[] Eval;
 
+    // the distinct site rates, and the index into them for each site
+    private double[] rateOfCategory;
+    private int[] categoryOfSite;
+    // alias tables of the transition probabilities, indexed by [rate category][node index][parent state], root entries are null.
+    // null if there are too many rate categories to cache them, in which case they are computed once per category
+    // in each column block.
+    private AliasTable[][][] transProbTables;
+    // the clock and branch rate scaled length of the branch above each node
+    private double[] branchLengths;
+    private AliasTable rootFreqTable;
+    // non-root nodes in pre-order, so every parent precedes its children
+    private TimeTreeNode[] preorderNodes;
+
+    public static final int DEFAULT_COLUMN_BLOCK_SIZE = 1024;
+
+    // the most transition probabilities that are cached in alias tables for all rate categories and branches together
+    static final long MAX_CACHED_TRANSITION_PROBABILITIES = 1L << 22;
+    // the limit used by this instance, which tests can lower
+    long maxCachedTransitionProbabilities = MAX_CACHED_TRANSITION_PROBABILITIES;
+
     public PhyloCTMC(@ParameterInfo(name = "tree", description = "the time tree.") Value<TimeTree> tree,
                      @ParameterInfo(name = "mu", description = "the clock rate. Default value is 1.0.", optional = true) Value<Double> mu,
                      @ParameterInfo(name = "freq", description = "the root probabilities. Optional parameter. If not specified then first row of e^{100*Q) is used.", optional = true) Value<Double[]> rootFreq,
                      @ParameterInfo(name = "Q", description = "the instantaneous rate matrix.") Value<Double[][]> Q,
                      @ParameterInfo(name = "siteRates", description = "a rate for each site in the alignment. Site rates are assumed to be 1.0 otherwise.", optional = true) Value<Double[]> siteRates,
                      @ParameterInfo(name = "branchRates", description = "a rate for each branch in the tree. Branch rates are assumed to be 1.0 otherwise.", optional = true) Value<Double[]> branchRates,
-                     @ParameterInfo(name = "L", description = "length of the alignment", optional = true) Value<Integer> L) {
+                     @ParameterInfo(name = "L", description = "length of the alignment", optional = true) Value<Integer> L,
+                     @ParameterInfo(name = "siteCategories", description = "a rate category for each site in the alignment, indexing categoryRates. An alternative to siteRates.", optional = true) Value<Integer[]> siteCategories,
+                     @ParameterInfo(name = "categoryRates", description = "the rate of each site rate category. Required if siteCategories is specified.", optional = true) Value<Double[]> categoryRates,
+                     @ParameterInfo(name = "columnBlockSize", description = "if greater than zero, the alignment is simulated this many sites at a time, evolving the whole block down each branch in turn rather than walking the tree once per site. 0 by default.", optional = true) Value<Integer> columnBlockSize,
+                     @ParameterInfo(name = "threads", description = "if given, the alignment is simulated in column blocks on this many threads. Each block has its own random stream, seeded in block order, so the alignment does not depend on the number of threads.", optional = true) Value<Integer> threads) {
 
         this.tree = tree;
         this.Q = Q;
@@ -61,6 +104,10 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         this.siteRates = siteRates;
         this.branchRates = branchRates;
         this.L = L;
+        this.siteCategories = siteCategories;
+        this.categoryRates = categoryRates;
+        this.columnBlockSize = columnBlockSize;
+        this.threads = threads;
         numStates = Q.value().length;
         this.random = Utils.getRandom();
         iexp = new double[numStates][numStates];
@@ -72,6 +119,10 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         siteRatesParamName = getParamName(4);
         branchRatesParamName = getParamName(5);
         LParamName = getParamName(6);
+        siteCategoriesParamName = getParamName(7);
+        categoryRatesParamName = getParamName(8);
+        columnBlockSizeParamName = getParamName(9);
+        threadsParamName = getParamName(10);
     }
 
     @Override
@@ -84,6 +135,10 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         if (siteRates != null) map.put(siteRatesParamName, siteRates);
         if (branchRates != null) map.put(branchRatesParamName, branchRates);
         if (L != null) map.put(LParamName, L);
+        if (siteCategories != null) map.put(siteCategoriesParamName, siteCategories);
+        if (categoryRates != null) map.put(categoryRatesParamName, categoryRates);
+        if (columnBlockSize != null) map.put(columnBlockSizeParamName, columnBlockSize);
+        if (threads != null) map.put(threadsParamName, threads);
         return map;
     }
 
@@ -96,6 +151,10 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         else if (paramName.equals(siteRatesParamName)) siteRates = value;
         else if (paramName.equals(branchRatesParamName)) branchRates = value;
         else if (paramName.equals(LParamName)) L = value;
+        else if (paramName.equals(siteCategoriesParamName)) siteCategories = value;
+        else if (paramName.equals(categoryRatesParamName)) categoryRates = value;
+        else if (paramName.equals(columnBlockSizeParamName)) columnBlockSize = value;
+        else if (paramName.equals(threadsParamName)) threads = value;
         else throw new RuntimeException("Unrecognised parameter name: " + paramName);
     }
 
@@ -103,68 +162,226 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         idMap.clear();
         fillIdMap(tree.value().getRoot(), idMap);
 
-        transProb = new double[numStates][numStates];
+        Generator QGenerator = Q.getGenerator();
+        HasTransitionProbabilities newClosedForm = (QGenerator instanceof HasTransitionProbabilities) ? (HasTransitionProbabilities) QGenerator : null;
+
+        if (!isCurrentQ(Q.value()) || newClosedForm != closedForm) {
+            numStates = Q.value().length;
+            transProb = new double[numStates][numStates];
+            iexp = new double[numStates][numStates];
 
-        double[][] primitive = new double[numStates][numStates];
-        for (int i = 0; i < numStates; i++) {
-            for (int j = 0; j < numStates; j++) {
-                primitive[i][j] = Q.value()[i][j];
+            double[][] primitive = new double[numStates][numStates];
+            for (int i = 0; i < numStates; i++) {
+                for (int j = 0; j < numStates; j++) {
+                    primitive[i][j] = Q.value()[i][j];
+                }
             }
+            currentQ = primitive;
+            decomposition = null;
+            equilibriumFreqs = null;
+            closedForm = newClosedForm;
         }
-        Array2DRowRealMatrix Qmatrix = new Array2DRowRealMatrix(primitive);
 
-        decomposition = new EigenDecomposition(Qmatrix);
-        Eval = decomposition.getRealEigenvalues();
-        Ievc = new double[numStates][numStates];
+        if (closedForm == null && decomposition == null) {
+            Array2DRowRealMatrix Qmatrix = new Array2DRowRealMatrix(currentQ);
+
+            decomposition = new EigenDecomposition(Qmatrix);
+            Eval = decomposition.getRealEigenvalues();
+            Ievc = new double[numStates][numStates];
 
-        // Eigen vectors
+            // Eigen vectors
 
-        Evec = new double[numStates][numStates];
-        for (int i = 0; i < numStates; i++) {
-            RealVector evec = decomposition.getEigenvector(i);
-            for (int j = 0; j < numStates; j++) {
-                Evec[j][i] = evec.getEntry(j);
+            Evec = new double[numStates][numStates];
+            for (int i = 0; i < numStates; i++) {
+                RealVector evec = decomposition.getEigenvector(i);
+                for (int j = 0; j < numStates; j++) {
+                    Evec[j][i] = evec.getEntry(j);
+                }
             }
-        }
 
-        luinverse(Evec, Ievc, numStates);
+            luinverse(Evec, Ievc, numStates);
+        }
 
         rootFreqs = freq;
         if (rootFreqs == null) {
-            rootFreqs = computeEquilibrium(transProb);
+            if (equilibriumFreqs == null) equilibriumFreqs = computeEquilibrium(transProb);
+            rootFreqs = equilibriumFreqs;
         }
     }
 
+    /**
+     * @return true if the last sample was set up for a rate matrix with the same entries as Q.
+     */
+    private boolean isCurrentQ(Double[][] Q) {
+        if (currentQ == null || currentQ.length != Q.length) return false;
+        for (int i = 0; i < Q.length; i++) {
+            for (int j = 0; j < Q.length; j++) {
+                if (currentQ[i][j] != Q[i][j]) return false;
+            }
+        }
+        return true;
+    }
+
     @GeneratorInfo(name = "PhyloCTMC", description = "The phylogenetic continuous-time Markov chain distribution. " +
             "(The sampling distribution that the phylogenetic likelihood is derived from.)")
     public RandomVariable<Alignment> sample() {
 
+        int length = prepare();
+
+        Alignment alignment = new Alignment(tree.value().n(), length, idMap, transProb.length);
+
+        fillPreorderNodes();
+
+        int blockSize = getColumnBlockSize();
+
+        // site patterns are only computed if they are asked for, with Alignment.getSitePatterns()
+        if (threads != null) {
+            int threadCount = threads.value();
+            if (threadCount < 1) throw new IllegalArgumentException(threadsParamName + " must be at least 1, but was " + threadCount);
+            simulateColumnsInParallel(length, alignment, blockSize, threadCount);
+        } else if (blockSize > 0 || transProbTables == null) {
+            // without cached tables, blocks let sites of the same rate category share their transition probabilities
+            if (blockSize == 0) blockSize = DEFAULT_COLUMN_BLOCK_SIZE;
+            for (int start = 0; start < length; start += blockSize) {
+                simulateColumns(start, Math.min(start + blockSize, length), alignment, start, random);
+            }
+        } else {
+            int[] nodeStates = new int[tree.value().getNodeCount()];
+            for (int i = 0; i < length; i++) {
+                int rootState = rootFreqTable.sample(random);
+                simulateSite(rootState, nodeStates, alignment, i);
+            }
+        }
+
+        return new RandomVariable<>("D", alignment, this);
+    }
+
+    /**
+     * Simulates an alignment a chunk of sites at a time, handing each chunk to the sink as soon as it is complete.
+     * At most chunkSize sites are held in memory, whatever the length of the alignment.
+     * The sink is closed when this returns, even if simulating or writing fails.
+     * This is for callers that simulate alignments too long to hold in memory; sampling a model uses sample().
+     */
+    public void sample(AlignmentSink sink, int chunkSize) throws IOException {
+
+        if (chunkSize <= 0) throw new IllegalArgumentException("The chunk size must be positive, but was " + chunkSize);
+
+        try (AlignmentSink out = sink) {
+            int length = prepare();
+            fillPreorderNodes();
+
+            Alignment chunk = new Alignment(tree.value().n(), Math.min(chunkSize, length), idMap, transProb.length);
+            out.start(chunk.getTaxaNames(), chunk.getDataTypeDescription(), length);
+
+            for (int start = 0; start < length; start += chunkSize) {
+                int end = Math.min(start + chunkSize, length);
+                if (chunk.L() != end - start) {
+                    // the last chunk is shorter
+                    chunk = new Alignment(tree.value().n(), end - start, idMap, transProb.length);
+                }
+                simulateColumns(start, end, chunk, 0, random);
+                out.write(chunk, start);
+            }
+        }
+    }
+
+    /**
+     * Sets up the substitution process, site rate categories and transition probabilities for a new sample.
+     *
+     * @return the length of the alignment to simulate.
+     */
+    private int prepare() {
+
         setup();
 
         int length = 0;
         if (L != null) length = L.value();
         if (length == 0 && siteRates != null) length = siteRates.value().length;
+        if (length == 0 && siteCategories != null) length = siteCategories.value().length;
         if (L != null && siteRates != null && L.value() != siteRates.value().length) {
             throw new RuntimeException(LParamName + " and " + siteRatesParamName + " have incompatible values!");
         }
-
-        Alignment alignment = new Alignment(tree.value().n(), length, idMap, transProb.length);
+        if (siteCategories != null) {
+            if (siteRates != null) {
+                throw new RuntimeException("Only one of " + siteRatesParamName + " and " + siteCategoriesParamName + " can be specified!");
+            }
+            if (categoryRates == null) {
+                throw new RuntimeException(categoryRatesParamName + " must be specified with " + siteCategoriesParamName + "!");
+            }
+            if (siteCategories.value().length != length) {
+                throw new RuntimeException(LParamName + " and " + siteCategoriesParamName + " have incompatible values!");
+            }
+        }
 
         double mu = (this.clockRate == null) ? 1.0 : this.clockRate.value();
 
-        for (int i = 0; i < length; i++) {
-            int rootState = Categorical.sample(rootFreqs.value(), random);
-            traverseTree(tree.value().getRoot(), rootState, alignment, i, transProb, mu,
-                    (siteRates == null) ? 1.0 : siteRates.value()[i]);
+        fillSiteCategories(length);
+        fillTransitionProbabilities(mu, length);
+
+        return length;
+    }
+
+    /**
+     * @return the number of sites simulated together, or 0 if sites are simulated one at a time.
+     */
+    private int getColumnBlockSize() {
+        int blockSize = (columnBlockSize == null) ? 0 : columnBlockSize.value();
+        if (blockSize < 0) throw new IllegalArgumentException(columnBlockSizeParamName + " must not be negative, but was " + blockSize);
+        return blockSize;
+    }
+
+    /**
+     * Simulates column blocks in parallel on threadCount threads. Each block draws from its own random stream,
+     * seeded in block order from the random generator, so the alignment depends on the seed and block size but not
+     * on the thread count. If no column block size is given, DEFAULT_COLUMN_BLOCK_SIZE is used. The block size is
+     * rounded up to a multiple of Alignment.MAX_SITES_PER_WORD. With one thread the blocks are simulated on the
+     * calling thread.
+     */
+    private void simulateColumnsInParallel(int length, Alignment alignment, int columnBlockSize, int threadCount) {
+        int requestedBlockSize = (columnBlockSize > 0) ? columnBlockSize : DEFAULT_COLUMN_BLOCK_SIZE;
+        // the alignment is bit-packed, so blocks written by different threads must not share words of storage
+        int sitesPerWord = Alignment.MAX_SITES_PER_WORD;
+        int blockSize = ((requestedBlockSize + sitesPerWord - 1) / sitesPerWord) * sitesPerWord;
+        int blockCount = (length + blockSize - 1) / blockSize;
+
+        long[] seeds = new long[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            seeds[b] = random.nextLong();
         }
 
-        return new RandomVariable<>("D", alignment, this);
+        if (threadCount == 1) {
+            for (int b = 0; b < blockCount; b++) {
+                int start = b * blockSize;
+                simulateColumns(start, Math.min(start + blockSize, length), alignment, start, new MersenneTwister(seeds[b]));
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.submit(() -> IntStream.range(0, blockCount).parallel().forEach(b -> {
+                int start = b * blockSize;
+                simulateColumns(start, Math.min(start + blockSize, length), alignment, start, new MersenneTwister(seeds[b]));
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
     }
 
     public Value<Double[]> getSiteRates() {
         return siteRates;
     }
 
+    public Value<Integer[]> getSiteCategories() {
+        return siteCategories;
+    }
+
+    public Value<Double[]> getCategoryRates() {
+        return categoryRates;
+    }
+
     public Value<Double[]> getBranchRates() {
         return branchRates;
     }
@@ -182,7 +399,7 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
     }
 
     private Value<Double[]> computeEquilibrium(double[][] transProb) {
-        getTransitionProbabilities(100, transProb);
+        getTransitionProbabilities(100, transProb, iexp);
         Double[] freqs = new Double[transProb.length];
         for (int i = 0; i < freqs.length; i++) {
             freqs[i] = transProb[0][i];
@@ -217,40 +434,247 @@ public class PhyloCTMC implements GenerativeDistribution<Alignment> {
         }
     }
 
-    private void traverseTree(TimeTreeNode node, int nodeState, Alignment alignment, int pos, double[][] transProb, double clockRate, double siteRate) {
+    /**
+     * Uses the given site rate categories if there are any, otherwise collapses the site rates into the distinct
+     * rates present, so that transition probabilities need only be computed once per category rather than once per site.
+     */
+    private void fillSiteCategories(int length) {
+        categoryOfSite = new int[length];
+        if (siteCategories != null) {
+            Double[] rates = categoryRates.value();
+            rateOfCategory = new double[rates.length];
+            for (int c = 0; c < rates.length; c++) {
+                rateOfCategory[c] = rates[c];
+            }
+            Integer[] categories = siteCategories.value();
+            for (int i = 0; i < length; i++) {
+                if (categories[i] < 0 || categories[i] >= rates.length) {
+                    throw new RuntimeException(siteCategoriesParamName + " must index into " + categoryRatesParamName + "!");
+                }
+                categoryOfSite[i] = categories[i];
+            }
+            return;
+        }
+        if (siteRates == null) {
+            rateOfCategory = new double[]{1.0};
+            return;
+        }
+
+        Map<Double, Integer> categoryMap = new HashMap<>();
+        List<Double> rates = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            Double rate = siteRates.value()[i];
+            Integer category = categoryMap.get(rate);
+            if (category == null) {
+                category = rates.size();
+                categoryMap.put(rate, category);
+                rates.add(rate);
+            }
+            categoryOfSite[i] = category;
+        }
+
+        rateOfCategory = new double[rates.size()];
+        for (int i = 0; i < rateOfCategory.length; i++) {
+            rateOfCategory[i] = rates.get(i);
+        }
+    }
+
+    /**
+     * Computes the transition probability matrix of every branch for every site rate category,
+     * and builds an alias table for each of its rows. The per-site traversal is then only table lookups.
+     * If there are nearly as many rate categories as sites, as with continuous site rates, or the tables would
+     * hold more than MAX_CACHED_TRANSITION_PROBABILITIES entries, no tables are built. Sites are then simulated
+     * in column blocks, which compute the transition probabilities of each branch once for each rate category
+     * in the block.
+     */
+    private void fillTransitionProbabilities(double clockRate, int length) {
+        List<TimeTreeNode> nodes = tree.value().getNodes();
+        branchLengths = new double[nodes.size()];
+
+        Double[] rootFreqValues = rootFreqs.value();
+        double[] p = new double[rootFreqValues.length];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = rootFreqValues[i];
+        }
+        rootFreqTable = new AliasTable(p);
 
-        if (node.isLeaf()) {
-            alignment.setState(node.getLeafIndex(), pos, nodeState);
-        } else {
-            List<TimeTreeNode> children = node.getChildren();
-            for (int i = 0; i < children.size(); i++) {
-                TimeTreeNode child = children.get(i);
-                double branchLength = siteRate * clockRate * (node.getAge() - child.getAge());
+        for (TimeTreeNode node : nodes) {
+            if (!node.isRoot()) {
+                double branchLength = clockRate * (node.getParent().getAge() - node.getAge());
 
                 if (branchRates != null) {
-                    branchLength *= branchRates.value()[child.getIndex()];
+                    branchLength *= branchRates.value()[node.getIndex()];
+                }
+                branchLengths[node.getIndex()] = branchLength;
+            }
+        }
+
+        int categoryCount = rateOfCategory.length;
+        long tableSize = (long) categoryCount * nodes.size() * numStates * numStates;
+        if (categoryCount > 1 && (2L * categoryCount > length || tableSize > maxCachedTransitionProbabilities)) {
+            transProbTables = null;
+            return;
+        }
+
+        transProbTables = new AliasTable[categoryCount][nodes.size()][];
+        for (TimeTreeNode node : nodes) {
+            if (!node.isRoot()) {
+                double branchLength = branchLengths[node.getIndex()];
+                for (int c = 0; c < categoryCount; c++) {
+                    getTransitionProbabilities(rateOfCategory[c] * branchLength, transProb, iexp);
+                    AliasTable[] tables = new AliasTable[numStates];
+                    for (int i = 0; i < numStates; i++) {
+                        tables[i] = new AliasTable(transProb[i]);
+                    }
+                    transProbTables[c][node.getIndex()] = tables;
+                }
+            }
+        }
+    }
+
+    private void fillPreorderNodes() {
+        TimeTree timeTree = tree.value();
+        int[] preorder = timeTree.getPreorder();
+
+        // the root comes first in pre-order and has no branch to simulate along
+        preorderNodes = new TimeTreeNode[preorder.length - 1];
+        for (int i = 1; i < preorder.length; i++) {
+            preorderNodes[i - 1] = timeTree.getNodeByIndex(preorder[i]);
+        }
+    }
+
+    /**
+     * Simulates the sites from start (inclusive) to end (exclusive) together, writing site start to the given column of the alignment.
+     * The root states of the whole block are drawn first, then each branch maps its parent's column of states
+     * to its own column in a single pass, so the tree is visited once per block rather than once per site.
+     */
+    private void simulateColumns(int start, int end, Alignment alignment, int column, RandomGenerator random) {
+        int width = end - start;
+        int[][] states = new int[tree.value().getNodeCount()][];
+
+        int[] rootStates = new int[width];
+        for (int i = 0; i < width; i++) {
+            rootStates[i] = rootFreqTable.sample(random);
+        }
+        TimeTreeNode root = tree.value().getRoot();
+        if (root.isLeaf()) {
+            for (int i = 0; i < width; i++) {
+                alignment.setState(root.getLeafIndex(), column + i, rootStates[i]);
+            }
+            return;
+        }
+        states[root.getIndex()] = rootStates;
+
+        double[] U = new double[width];
+        // scratch matrices for the transition probabilities of each category, and the sites grouped by category,
+        // if the transition probabilities are not cached
+        double[][] categoryTransProb = (transProbTables == null) ? new double[numStates][numStates] : null;
+        double[][] categoryIexp = (transProbTables == null) ? new double[numStates][numStates] : null;
+        int[] sites = (transProbTables == null) ? sitesByCategory(start, width) : null;
+        for (TimeTreeNode node : preorderNodes) {
+            int nodeIndex = node.getIndex();
+            int[] parentStates = states[node.getParent().getIndex()];
+            int[] nodeStates = new int[width];
+
+            for (int i = 0; i < width; i++) {
+                U[i] = random.nextDouble();
+            }
+            if (transProbTables != null) {
+                for (int i = 0; i < width; i++) {
+                    nodeStates[i] = transProbTables[categoryOfSite[start + i]][nodeIndex][parentStates[i]].sample(U[i]);
                 }
+            } else {
+                int k = 0;
+                while (k < width) {
+                    int category = categoryOfSite[start + sites[k]];
+                    getTransitionProbabilities(rateOfCategory[category] * branchLengths[nodeIndex], categoryTransProb, categoryIexp);
+                    for (; k < width && categoryOfSite[start + sites[k]] == category; k++) {
+                        int i = sites[k];
+                        nodeStates[i] = drawState(categoryTransProb[parentStates[i]], U[i]);
+                    }
+                }
+            }
+
+            if (node.isLeaf()) {
+                int leafIndex = node.getLeafIndex();
+                for (int i = 0; i < width; i++) {
+                    alignment.setState(leafIndex, column + i, nodeStates[i]);
+                }
+            } else {
+                states[nodeIndex] = nodeStates;
+            }
+        }
+    }
+
+    /**
+     * @return the offsets from start of the sites in the block, ordered by rate category.
+     */
+    private int[] sitesByCategory(int start, int width) {
+        long[] keys = new long[width];
+        for (int i = 0; i < width; i++) {
+            keys[i] = ((long) categoryOfSite[start + i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] sites = new int[width];
+        for (int i = 0; i < width; i++) {
+            sites[i] = (int) keys[i];
+        }
+        return sites;
+    }
 
-                getTransitionProbabilities(branchLength, transProb);
-                int state = drawState(transProb[nodeState]);
+    /**
+     * Simulates a single site down the tree from the given root state, visiting the branches in pre-order,
+     * with the cached transition probabilities.
+     */
+    private void simulateSite(int rootState, int[] nodeStates, Alignment alignment, int pos) {
 
-                traverseTree(child, state, alignment, pos, transProb, clockRate, siteRate);
+        TimeTreeNode root = tree.value().getRoot();
+        if (root.isLeaf()) {
+            alignment.setState(root.getLeafIndex(), pos, rootState);
+            return;
+        }
+        nodeStates[root.getIndex()] = rootState;
+
+        int category = categoryOfSite[pos];
+        for (TimeTreeNode node : preorderNodes) {
+            int parentState = nodeStates[node.getParent().getIndex()];
+            int state = transProbTables[category][node.getIndex()][parentState].sample(random);
+
+            if (node.isLeaf()) {
+                alignment.setState(node.getLeafIndex(), pos, state);
+            } else {
+                nodeStates[node.getIndex()] = state;
             }
         }
     }
 
-    private int drawState(double[] p) {
-        double U = random.nextDouble();
-        double totalP = p[0];
-        if (U <= totalP) return 0;
-        for (int i = 1; i < p.length; i++) {
-            totalP += p[i];
-            if (U <= totalP) return i;
+    /**
+     * @return the state drawn from the given row of transition probabilities with the uniform variate u.
+     */
+    private static int drawState(double[] transProbs, double u) {
+        double total = 0;
+        for (double p : transProbs) {
+            total += p;
         }
-        throw new RuntimeException("p vector doesn't add to 1.0!");
+        u *= total;
+        int last = transProbs.length - 1;
+        for (int j = 0; j < last; j++) {
+            u -= transProbs[j];
+            if (u < 0) return j;
+        }
+        return last;
     }
 
-    private void getTransitionProbabilities(double branchLength, double[][] transProbs) {
+    /**
+     * Computes the transition probabilities for the branch length into transProbs, using iexp as scratch space,
+     * so that threads with their own scratch space can call it at the same time.
+     */
+    private void getTransitionProbabilities(double branchLength, double[][] transProbs, double[][] iexp) {
+
+        if (closedForm != null) {
+            closedForm.getTransitionProbabilities(branchLength, transProbs);
+            return;
+        }
 
         int i, j, k;
         double temp;
@@ -10,7 +10,7 @@ import java.util.Map;
 /**
  * Created by adru001 on 2/02/20.
  */
-public class F81 extends RateMatrix {
+public class F81 extends RateMatrix implements HasTransitionProbabilities {
 
     String freqParamName;
 
@@ -54,4 +54,7 @@ public class F81 extends RateMatrix {
         return getParams().get(freqParamName);
     }
 
+    public void getTransitionProbabilities(double t, double[][] transProbs) {
+        tn93TransitionProbabilities(1.0, 1.0, getFreq().value(), t, transProbs);
+    }
 }
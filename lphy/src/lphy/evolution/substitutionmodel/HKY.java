@@ -6,7 +6,7 @@ import lphy.graphicalModel.types.DoubleArray2DValue;
 /**
  * Created by adru001 on 2/02/20.
  */
-public class HKY extends RateMatrix {
+public class HKY extends RateMatrix implements HasTransitionProbabilities {
 
     String kappaParamName;
     String freqParamName;
@@ -61,4 +61,9 @@ public class HKY extends RateMatrix {
 
         return Q;
     }
+
+    public void getTransitionProbabilities(double t, double[][] transProbs) {
+        double kappa = getKappa().value();
+        tn93TransitionProbabilities(kappa, kappa, getFreq().value(), t, transProbs);
+    }
 }
@@ -0,0 +1,16 @@
+package lphy.evolution.substitutionmodel;
+
+/**
+ * A rate matrix function whose transition probabilities have a closed form,
+ * so they can be computed without a numerical eigen decomposition of Q.
+ */
+public interface HasTransitionProbabilities {
+
+    /**
+     * Fills in P(t) = e^{Qt} for the rate matrix produced from the current parameter values.
+     *
+     * @param t          the branch length, in the time units of Q.
+     * @param transProbs the matrix to fill in.
+     */
+    void getTransitionProbabilities(double t, double[][] transProbs);
+}
@@ -6,7 +6,7 @@ import lphy.graphicalModel.types.DoubleArray2DValue;
 /**
  * Created by adru001 on 2/02/20.
  */
-public class JukesCantor extends RateMatrix {
+public class JukesCantor extends RateMatrix implements HasTransitionProbabilities {
 
     String paramName;
 
@@ -38,4 +38,10 @@ public class JukesCantor extends RateMatrix {
         }
         return Q;
     }
+
+    public void getTransitionProbabilities(double t, double[][] transProbs) {
+        Value<Double> rateValue = getParams().get(paramName);
+        double rate = (rateValue != null) ? rateValue.value() : 1.0;
+        tn93TransitionProbabilities(1.0, 1.0, new Double[] {0.25, 0.25, 0.25, 0.25}, rate * t, transProbs);
+    }
 }
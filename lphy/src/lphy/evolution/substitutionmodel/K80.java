@@ -8,7 +8,7 @@ import java.util.Map;
 /**
  * Created by adru001 on 2/02/20.
  */
-public class K80 extends RateMatrix {
+public class K80 extends RateMatrix implements HasTransitionProbabilities {
 
     String paramName;
 
@@ -40,7 +40,7 @@ public class K80 extends RateMatrix {
                     } else {
                         Q[i][j] = 1.0;
                     }
-                }
+                } else Q[i][i] = 0.0;
                 totalRates[i] += Q[i][j];
             }
             Q[i][i] = -totalRates[i];
@@ -55,4 +55,8 @@ public class K80 extends RateMatrix {
         return getParams().get(paramName);
     }
 
+    public void getTransitionProbabilities(double t, double[][] transProbs) {
+        double kappa = getKappa().value();
+        tn93TransitionProbabilities(kappa, kappa, new Double[] {0.25, 0.25, 0.25, 0.25}, t, transProbs);
+    }
 }
@@ -20,4 +20,47 @@ public abstract class RateMatrix extends DeterministicFunction<Double[][]> {
             }
         }
     }
+
+    /**
+     * Computes the closed-form TN93 transition probabilities, of which JC69, K80, F81 and HKY are special cases.
+     * The rate matrix is assumed normalised to one expected substitution per unit time, as normalize() does.
+     * States are ordered A, C, G, T.
+     *
+     * @param kappa1 the A<->G transition rate relative to transversions.
+     * @param kappa2 the C<->T transition rate relative to transversions.
+     * @param freqs  the base frequencies.
+     * @param t      the branch length in expected substitutions.
+     */
+    static void tn93TransitionProbabilities(double kappa1, double kappa2, Double[] freqs, double t, double[][] transProbs) {
+        double piA = freqs[0], piC = freqs[1], piG = freqs[2], piT = freqs[3];
+        double piR = piA + piG;
+        double piY = piC + piT;
+
+        // rescale time by the expected number of substitutions per unit time of the unnormalised matrix
+        double subst = 2.0 * (kappa1 * piA * piG + kappa2 * piC * piT + piR * piY);
+        double time = t / subst;
+
+        double transversion = Math.exp(-time);
+        double purine = Math.exp(-(piR * kappa1 + piY) * time);
+        double pyrimidine = Math.exp(-(piY * kappa2 + piR) * time);
+
+        for (int j = 0; j < 4; j++) {
+            double pi = freqs[j];
+            boolean isPurine = (j == 0 || j == 2);
+            double piGroup = isPurine ? piR : piY;
+            double piOther = isPurine ? piY : piR;
+            double within = isPurine ? purine : pyrimidine;
+
+            for (int i = 0; i < 4; i++) {
+                boolean sameGroup = ((i == 0 || i == 2) == isPurine);
+                if (!sameGroup) {
+                    transProbs[i][j] = pi * (1.0 - transversion);
+                } else if (i == j) {
+                    transProbs[i][j] = pi + pi * (piOther / piGroup) * transversion + ((piGroup - pi) / piGroup) * within;
+                } else {
+                    transProbs[i][j] = pi + pi * (piOther / piGroup) * transversion - (pi / piGroup) * within;
+                }
+            }
+        }
+    }
 }
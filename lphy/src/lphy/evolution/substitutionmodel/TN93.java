@@ -10,7 +10,7 @@ import java.util.Map;
 /**
  * Created by adru001 on 2/02/20.
  */
-public class TN93 extends RateMatrix {
+public class TN93 extends RateMatrix implements HasTransitionProbabilities {
 
     String kappa1ParamName;
     String kappa2ParamName;
@@ -54,6 +54,7 @@ public class TN93 extends RateMatrix {
             for (int j = 0; j < numStates; j++) {
                 totalRates[i] += Q[i][j];
             }
+            Q[i][i] = -totalRates[i];
         }
 
         normalize(freqs, Q);
@@ -73,4 +74,7 @@ public class TN93 extends RateMatrix {
         return getParams().get(freqParamName);
     }
 
+    public void getTransitionProbabilities(double t, double[][] transProbs) {
+        tn93TransitionProbabilities(getKappa1().value(), getKappa2().value(), getFreq().value(), t, transProbs);
+    }
 }
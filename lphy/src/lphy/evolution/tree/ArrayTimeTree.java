@@ -0,0 +1,260 @@
+package lphy.evolution.tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact time tree stored as parallel arrays indexed by node number, for simulators that build large trees.
+ * Nodes are numbered in the order they are added. Children are kept as first-child/next-sibling links, so
+ * nodes may have any number of children. Leaf ids and metadata are only stored once they are set.
+ * Use toTimeTree() to convert to a TimeTree for the rest of the code.
+ */
+public class ArrayTimeTree {
+
+    int[] parent;
+    int[] firstChild;
+    int[] lastChild;
+    int[] nextSibling;
+    int[] leafIndex;
+    double[] age;
+
+    // leaf ids by leaf index; null entries default to the leaf index
+    String[] leafIds;
+
+    // metadata columns by key, created the first time the key is set
+    Map<String, Object[]> metaData = null;
+
+    int nodeCount = 0;
+    int leafCount = 0;
+
+    /**
+     * @param leafCapacity the expected number of leaves. Storage for a binary tree of this size is allocated
+     *                     up front, and grows if more nodes are added.
+     */
+    public ArrayTimeTree(int leafCapacity) {
+        int capacity = Math.max(1, 2 * leafCapacity - 1);
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        leafIndex = new int[capacity];
+        age = new double[capacity];
+        leafIds = new String[Math.max(1, leafCapacity)];
+    }
+
+    private int newNode(double nodeAge) {
+        if (nodeCount == age.length) {
+            int capacity = age.length * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            leafIndex = Arrays.copyOf(leafIndex, capacity);
+            age = Arrays.copyOf(age, capacity);
+            if (metaData != null) {
+                for (Map.Entry<String, Object[]> column : metaData.entrySet()) {
+                    column.setValue(Arrays.copyOf(column.getValue(), capacity));
+                }
+            }
+        }
+        int node = nodeCount;
+        parent[node] = -1;
+        firstChild[node] = -1;
+        lastChild[node] = -1;
+        nextSibling[node] = -1;
+        leafIndex[node] = -1;
+        age[node] = nodeAge;
+        nodeCount += 1;
+        return node;
+    }
+
+    /**
+     * Adds a leaf. Leaves are given leaf indices in the order they are added.
+     *
+     * @param id      the taxon id, or null to use the leaf index as the id.
+     * @param leafAge the age of the leaf.
+     * @return the node number of the new leaf.
+     */
+    public int addLeaf(String id, double leafAge) {
+        int node = newNode(leafAge);
+        setLeaf(node, leafCount, id);
+        return node;
+    }
+
+    private void setLeaf(int node, int index, String id) {
+        if (index >= leafIds.length) leafIds = Arrays.copyOf(leafIds, Math.max(index + 1, leafIds.length * 2));
+        leafIds[index] = id;
+        leafIndex[node] = index;
+        leafCount += 1;
+    }
+
+    /**
+     * Adds an internal node with two children.
+     *
+     * @return the node number of the new internal node.
+     */
+    public int addInternalNode(double nodeAge, int child1, int child2) {
+        int node = newNode(nodeAge);
+        addChild(node, child1);
+        addChild(node, child2);
+        return node;
+    }
+
+    /**
+     * Adds an internal node with the given children.
+     *
+     * @return the node number of the new internal node.
+     */
+    public int addInternalNode(double nodeAge, int[] children) {
+        int node = newNode(nodeAge);
+        for (int child : children) {
+            addChild(node, child);
+        }
+        return node;
+    }
+
+    public void addChild(int node, int child) {
+        if (parent[child] != -1) throw new IllegalArgumentException("Node " + child + " already has a parent.");
+        if (firstChild[node] == -1) {
+            firstChild[node] = child;
+        } else nextSibling[lastChild[node]] = child;
+        lastChild[node] = child;
+        parent[child] = node;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+            count += 1;
+        }
+        return count;
+    }
+
+    public boolean isLeaf(int node) {
+        return firstChild[node] == -1;
+    }
+
+    public int getLeafIndex(int node) {
+        return leafIndex[node];
+    }
+
+    public double getAge(int node) {
+        return age[node];
+    }
+
+    public void setAge(int node, double nodeAge) {
+        age[node] = nodeAge;
+    }
+
+    /**
+     * @return the id of the given leaf, or null if the node is not a leaf.
+     */
+    public String getId(int node) {
+        int index = leafIndex[node];
+        if (index == -1) return null;
+        return leafIds[index] != null ? leafIds[index] : String.valueOf(index);
+    }
+
+    public void setMetaData(int node, String key, Object value) {
+        if (metaData == null) metaData = new HashMap<>();
+        metaData.computeIfAbsent(key, k -> new Object[age.length])[node] = value;
+    }
+
+    public Object getMetaData(int node, String key) {
+        if (metaData == null) return null;
+        Object[] column = metaData.get(key);
+        return column == null ? null : column[node];
+    }
+
+    /**
+     * @return the root node, which is the only node without a parent.
+     */
+    public int getRoot() {
+        int root = -1;
+        for (int node = 0; node < nodeCount; node++) {
+            if (parent[node] == -1) {
+                if (root != -1) throw new IllegalStateException("Nodes " + root + " and " + node + " both have no parent.");
+                root = node;
+            }
+        }
+        if (root == -1) throw new IllegalStateException("The tree has no nodes.");
+        return root;
+    }
+
+    /**
+     * @return a TimeTree with the same topology, ages, leaf indices, ids and metadata.
+     */
+    public TimeTree toTimeTree() {
+        TimeTree tree = new TimeTree();
+
+        TimeTreeNode[] nodes = new TimeTreeNode[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            TimeTreeNode timeTreeNode = new TimeTreeNode(getId(node), tree);
+            timeTreeNode.setAge(age[node]);
+            timeTreeNode.setLeafIndex(leafIndex[node]);
+            nodes[node] = timeTreeNode;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+                nodes[node].addChild(nodes[child]);
+            }
+        }
+        if (metaData != null) {
+            for (Map.Entry<String, Object[]> column : metaData.entrySet()) {
+                Object[] values = column.getValue();
+                for (int node = 0; node < nodeCount; node++) {
+                    if (values[node] != null) nodes[node].setMetaData(column.getKey(), values[node]);
+                }
+            }
+        }
+
+        tree.setRoot(nodes[getRoot()]);
+        return tree;
+    }
+
+    /**
+     * @return an ArrayTimeTree with the same topology, ages, leaf indices, ids and metadata as the given tree.
+     * Node numbers are the node indices of the time tree.
+     */
+    public static ArrayTimeTree fromTimeTree(TimeTree timeTree) {
+        List<TimeTreeNode> nodes = timeTree.getNodes();
+        ArrayTimeTree tree = new ArrayTimeTree(timeTree.n());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            TimeTreeNode timeTreeNode = timeTree.getNodeByIndex(i);
+            int node = tree.newNode(timeTreeNode.getAge());
+            if (timeTreeNode.isLeaf()) tree.setLeaf(node, timeTreeNode.getLeafIndex(), timeTreeNode.getId());
+            for (Map.Entry<String, Object> entry : timeTreeNode.getMetaData().entrySet()) {
+                tree.setMetaData(node, entry.getKey(), entry.getValue());
+            }
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            for (TimeTreeNode child : timeTree.getNodeByIndex(i).getChildren()) {
+                tree.addChild(i, child.getIndex());
+            }
+        }
+        return tree;
+    }
+}
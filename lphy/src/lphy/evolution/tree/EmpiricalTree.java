@@ -0,0 +1,66 @@
+package lphy.evolution.tree;
+
+import lphy.core.distributions.Utils;
+import lphy.graphicalModel.*;
+import lphy.nexus.TreesFileIndex;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A tree drawn uniformly from the trees in a file, parsing only the tree drawn.
+ */
+public class EmpiricalTree implements GenerativeDistribution<TimeTree> {
+
+    final String treesParamName;
+    final String burninParamName;
+    private Value<TreesFileIndex> trees;
+    private Value<Integer> burnin;
+
+    RandomGenerator random;
+
+    public EmpiricalTree(@ParameterInfo(name = "trees", description = "the trees to draw from, from readTrees.") Value<TreesFileIndex> trees,
+                         @ParameterInfo(name = "burnin", description = "the number of trees at the start of the file that are never drawn, 0 by default.", optional = true) Value<Integer> burnin) {
+
+        this.trees = trees;
+        this.burnin = burnin;
+        this.random = Utils.getRandom();
+
+        treesParamName = getParamName(0);
+        burninParamName = getParamName(1);
+    }
+
+    @GeneratorInfo(name = "EmpiricalTree", description = "A tree drawn uniformly from a set of trees, such as a posterior tree set.")
+    public RandomVariable<TimeTree> sample() {
+
+        TreesFileIndex index = trees.value();
+        int first = burnin != null ? burnin.value() : 0;
+        if (first < 0 || first >= index.size()) {
+            throw new IllegalArgumentException("The burnin is " + first + " but there are " + index.size() + " trees.");
+        }
+
+        TimeTree tree = index.getTree(first + random.nextInt(index.size() - first));
+
+        return new RandomVariable<>("\u03C8", tree, this);
+    }
+
+    @Override
+    public SortedMap<String, Value> getParams() {
+        SortedMap<String, Value> map = new TreeMap<>();
+        map.put(treesParamName, trees);
+        if (burnin != null) map.put(burninParamName, burnin);
+        return map;
+    }
+
+    @Override
+    public void setParam(String paramName, Value value) {
+        if (paramName.equals(treesParamName)) trees = value;
+        else if (paramName.equals(burninParamName)) burnin = value;
+        else throw new RuntimeException("Unrecognised parameter name: " + paramName);
+    }
+
+    public String toString() {
+        return getName();
+    }
+}
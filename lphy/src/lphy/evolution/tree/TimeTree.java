@@ -18,6 +18,11 @@ public class TimeTree implements HasComponentView<TimeTree> {
 
     String[] taxaNames = null;
 
+    // cached node indices in traversal order, cleared whenever the tree structure changes
+    private int[] preorder = null;
+    private int[] postorder = null;
+    private boolean indexed = false;
+
     // number of leaves
     int n = 0;
 
@@ -34,25 +39,52 @@ public class TimeTree implements HasComponentView<TimeTree> {
         nodes = new ArrayList<>();
 
         fillNodeList(rootNode, reindexLeaves);
-        indexNodes(rootNode, new int[]{n});
+        indexNodes();
         // root node now last in list, first n nodes are leaves
-        nodes.sort(Comparator.comparingInt(TimeTreeNode::getIndex));
+        sortNodesByIndex();
+    }
+
+    /**
+     * Orders the node list by node index, placing each node directly when the indices are 0 to size-1.
+     */
+    private void sortNodesByIndex() {
+        TimeTreeNode[] byIndex = new TimeTreeNode[nodes.size()];
+        for (TimeTreeNode node : nodes) {
+            int index = node.getIndex();
+            if (index < 0 || index >= byIndex.length || byIndex[index] != null) {
+                nodes.sort(Comparator.comparingInt(TimeTreeNode::getIndex));
+                return;
+            }
+            byIndex[index] = node;
+        }
+        for (int i = 0; i < byIndex.length; i++) {
+            nodes.set(i, byIndex[i]);
+        }
     }
 
     public void setRoot(TimeTreeNode timeTreeNode) {
         setRoot(timeTreeNode, false);
     }
 
-    private void indexNodes(TimeTreeNode node, int[] nextInternalIndex) {
-        if (node.isLeaf()) {
-            node.setIndex(node.getLeafIndex());
-        } else {
-            for (TimeTreeNode child : node.getChildren()) {
-                indexNodes(child, nextInternalIndex);
+    /**
+     * Gives leaves their leaf index, and internal nodes the indices from n upwards in post-order,
+     * using the post-order list made by fillNodeList.
+     */
+    private void indexNodes() {
+        int nextInternalIndex = n;
+        postorder = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            TimeTreeNode node = nodes.get(i);
+            if (node.isLeaf()) {
+                node.setIndex(node.getLeafIndex());
+            } else {
+                node.setIndex(nextInternalIndex);
+                nextInternalIndex += 1;
             }
-            node.setIndex(nextInternalIndex[0]);
-            nextInternalIndex[0] += 1;
+            postorder[i] = node.getIndex();
         }
+        preorder = null;
+        indexed = true;
     }
 
     public int getNodeCount() {
@@ -67,30 +99,88 @@ public class TimeTree implements HasComponentView<TimeTree> {
         return count;
     }
 
-
     public List<TimeTreeNode> getNodes() {
         return nodes;
     }
 
-    private int fillNodeList(TimeTreeNode node, boolean reindexLeaves) {
-        if (node.isRoot()) {
-            nodes.clear();
-            n = 0;
+    /**
+     * Called when a node of this tree gains or loses a child, as the cached traversal orders no longer apply.
+     */
+    void structureChanged() {
+        preorder = null;
+        postorder = null;
+        indexed = false;
+    }
+
+    /**
+     * @return the node indices in pre-order (parents before children, children in order), starting with the root.
+     * The array is cached and must not be modified.
+     */
+    public int[] getPreorder() {
+        if (preorder == null) {
+            checkIndexed();
+            int[] order = new int[nodes.size()];
+            TimeTreeNode[] stack = new TimeTreeNode[nodes.size()];
+            int top = 0;
+            stack[top++] = rootNode;
+            int i = 0;
+            while (top > 0) {
+                TimeTreeNode node = stack[--top];
+                order[i++] = node.getIndex();
+                List<TimeTreeNode> children = node.getChildren();
+                for (int j = node.getChildCount() - 1; j >= 0; j--) {
+                    stack[top++] = children.get(j);
+                }
+            }
+            preorder = order;
         }
+        return preorder;
+    }
 
-        node.tree = this;
+    /**
+     * @return the node indices in post-order (children in order before their parents), ending with the root.
+     * The array is cached and must not be modified.
+     */
+    public int[] getPostorder() {
+        checkIndexed();
+        return postorder;
+    }
+
+    private void checkIndexed() {
+        if (!indexed) throw new IllegalStateException("The tree has changed since its nodes were indexed; call setRoot first.");
+    }
 
-        if (node.getMetaData("remove") != null) {
-            throw new RuntimeException("A node that should be removed has not been!" + node.id);
+    /**
+     * Fills the node list in post-order without recursion, numbering any unnumbered leaves (or all leaves if
+     * reindexLeaves is true) in the order they are met.
+     */
+    private int fillNodeList(TimeTreeNode root, boolean reindexLeaves) {
+        nodes.clear();
+        n = 0;
+
+        // nodes visited parent first with the last child taken first, reversed, give children in order before parents
+        List<TimeTreeNode> reversePostorder = new ArrayList<>();
+        Deque<TimeTreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TimeTreeNode node = stack.pop();
+            reversePostorder.add(node);
+            for (int j = 0; j < node.getChildCount(); j++) {
+                stack.push(node.getChildren().get(j));
+            }
         }
 
-        if (node.isLeaf()) {
-            nodes.add(node);
-            if (node.getLeafIndex() == -1 || reindexLeaves) node.setLeafIndex(n);
-            n += 1;
-        } else {
-            for (TimeTreeNode child : node.getChildren()) {
-                fillNodeList(child, reindexLeaves);
+        for (int i = reversePostorder.size() - 1; i >= 0; i--) {
+            TimeTreeNode node = reversePostorder.get(i);
+            node.tree = this;
+
+            if (node.getMetaData("remove") != null) {
+                throw new RuntimeException("A node that should be removed has not been!" + node.id);
+            }
+
+            if (node.isLeaf()) {
+                if (node.getLeafIndex() == -1 || reindexLeaves) node.setLeafIndex(n);
+                n += 1;
             }
             nodes.add(node);
         }
@@ -117,43 +207,71 @@ public class TimeTree implements HasComponentView<TimeTree> {
     }
 
     private void toNewick(TimeTreeNode node, StringBuilder builder, boolean includeSingleChildNodes) {
-        if (!includeSingleChildNodes && node.getChildCount() == 1) {
-            System.out.println("Skip single child node " + node.getId());
-            toNewick(node.getChildren().get(0), builder, includeSingleChildNodes);
-        } else {
-            if (node.isLeaf()) {
-                builder.append(node.id);
-                SortedMap<String, Object> metaData = node.metaData;
-                if (metaData.size() > 0) {
-                    builder.append("[&");
-                    for (Map.Entry<String, Object> entry : metaData.entrySet()) {
-                        builder.append(entry.getKey());
-                        builder.append("=");
-                        builder.append(entry.getValue());
-                    }
-                    builder.append("]");
+        // the internal nodes whose subtrees are being written, and how many of their children have been started
+        TimeTreeNode[] openNodes = new TimeTreeNode[Math.max(1, nodes.size())];
+        int[] startedChildren = new int[openNodes.length];
+        int top = 0;
+
+        TimeTreeNode next = node;
+        while (true) {
+            if (next != null) {
+                while (!includeSingleChildNodes && next.getChildCount() == 1) {
+                    System.out.println("Skip single child node " + next.getId());
+                    next = next.getChildren().get(0);
                 }
-            } else {
-
-                builder.append("(");
-                List<TimeTreeNode> children = node.getChildren();
-                toNewick(children.get(0), builder, includeSingleChildNodes);
-                for (int i = 1; i < children.size(); i++) {
-                    builder.append(",");
-                    toNewick(children.get(i), builder, includeSingleChildNodes);
+                if (next.isLeaf()) {
+                    builder.append(next.id);
+                    SortedMap<String, Object> metaData = next.metaData;
+                    if (metaData.size() > 0) {
+                        builder.append("[&");
+                        for (Map.Entry<String, Object> entry : metaData.entrySet()) {
+                            builder.append(entry.getKey());
+                            builder.append("=");
+                            builder.append(entry.getValue());
+                        }
+                        builder.append("]");
+                    }
+                    appendBranch(next, builder, includeSingleChildNodes);
+                } else {
+                    builder.append("(");
+                    if (top == openNodes.length) {
+                        openNodes = Arrays.copyOf(openNodes, top * 2);
+                        startedChildren = Arrays.copyOf(startedChildren, top * 2);
+                    }
+                    openNodes[top] = next;
+                    startedChildren[top] = 0;
+                    top += 1;
                 }
-                builder.append(")");
+                next = null;
             }
-            if (node.isRoot()) {
-                builder.append(":0.0;");
+
+            if (top == 0) break;
+
+            // start the next child of the innermost open node, or close it
+            TimeTreeNode open = openNodes[top - 1];
+            int started = startedChildren[top - 1];
+            if (started < open.getChildCount()) {
+                if (started > 0) builder.append(",");
+                next = open.getChildren().get(started);
+                startedChildren[top - 1] = started + 1;
             } else {
-                builder.append(":");
-                double branchLength = getBranchLength(node, includeSingleChildNodes);
-                builder.append(branchLength);
+                builder.append(")");
+                top -= 1;
+                appendBranch(open, builder, includeSingleChildNodes);
             }
         }
     }
 
+    private void appendBranch(TimeTreeNode node, StringBuilder builder, boolean includeSingleChildNodes) {
+        if (node.isRoot()) {
+            builder.append(":0.0;");
+        } else {
+            builder.append(":");
+            double branchLength = getBranchLength(node, includeSingleChildNodes);
+            builder.append(branchLength);
+        }
+    }
+
     private double getBranchLength(TimeTreeNode node, boolean includeSingleChildNodes) {
         TimeTreeNode parent = node.getParent();
         if (!includeSingleChildNodes) {
@@ -196,6 +314,13 @@ public class TimeTree implements HasComponentView<TimeTree> {
         return true;
     }
 
+    /**
+     * Appends the Newick string of this tree, including the trailing semicolon, to the builder.
+     */
+    public void appendNewick(StringBuilder builder, boolean includeSingleChildNodes) {
+        toNewick(rootNode, builder, includeSingleChildNodes);
+    }
+
     public String toNewick(boolean includeSingleChildNodes) {
         StringBuilder builder = new StringBuilder();
         //builder.append("\"");
@@ -116,11 +116,13 @@ public class TimeTreeNode {
         }
         children.add(child);
         child.parent = this;
+        if (tree != null) tree.structureChanged();
     }
 
     public void removeChild(TimeTreeNode child) {
         children.remove(child);
         child.parent = null;
+        if (tree != null) tree.structureChanged();
     }
 
 
@@ -1,16 +1,60 @@
 package lphy.graphicalModel;
 
+import java.util.Map;
+
 public abstract class DeterministicFunction<T> extends Func {
 
+    // the last value returned by generate(), and the inputs and input versions it was computed from
+    private Value<T> cachedValue = null;
+    private Value<?>[] cachedInputs = null;
+    private long[] cachedVersions = null;
+
     public abstract Value<T> apply();
 
+    /**
+     * @return the value of this function. The previous value is returned without calling apply() again
+     * if the function has the same input values, and none of them has been changed with setValue since.
+     */
+    @SuppressWarnings("rawtypes") // getParams() returns raw values
     public Value<T> generate() {
-        return apply();
+        if (!isCachedValueCurrent()) {
+            Value<T> value = apply();
+
+            Map<String, Value> params = getParams();
+            Value<?>[] inputs = new Value<?>[params.size()];
+            long[] versions = new long[inputs.length];
+            int i = 0;
+            for (Value<?> input : params.values()) {
+                inputs[i] = input;
+                versions[i] = input != null ? input.getVersion() : -1;
+                i += 1;
+            }
+            cachedValue = value;
+            cachedInputs = inputs;
+            cachedVersions = versions;
+        }
+        return cachedValue;
+    }
+
+    @SuppressWarnings("rawtypes") // getParams() returns raw values
+    private boolean isCachedValueCurrent() {
+        if (cachedValue == null) return false;
+
+        Map<String, Value> params = getParams();
+        if (params.size() != cachedInputs.length) return false;
+
+        int i = 0;
+        for (Value<?> input : params.values()) {
+            if (input != cachedInputs[i]) return false;
+            if (input != null && input.getVersion() != cachedVersions[i]) return false;
+            i += 1;
+        }
+        return true;
     }
 
     @Override
     public T value() {
-    	return apply().value();
+    	return generate().value();
     }
 
     @Override
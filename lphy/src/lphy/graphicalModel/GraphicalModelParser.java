@@ -44,7 +44,7 @@ public class GraphicalModelParser implements LPhyParser {
     public GraphicalModelParser() {
 
         Class<?>[] genClasses = {Normal.class, LogNormal.class, LogNormalMulti.class, Exp.class, Coalescent.class,
-                PhyloCTMC.class, PhyloBrownian.class, Dirichlet.class, Gamma.class, DiscretizedGamma.class,
+                PhyloCTMC.class, PhyloBrownian.class, Dirichlet.class, Gamma.class, DiscretizedGamma.class, DiscretizedGammaCategories.class,
                 ErrorModel.class, BirthDeathTree.class, BirthDeathTreeDT.class, Yule.class, Beta.class, Geometric.class, Bernoulli.class};
 
         for (Class<?> genClass : genClasses) {
@@ -53,7 +53,7 @@ public class GraphicalModelParser implements LPhyParser {
 
         Class<?>[] functionClasses = {
                 lphy.core.functions.Exp.class, JukesCantor.class, K80.class, F81.class, HKY.class, TN93.class,
-                GTR.class, BinaryRateMatrix.class, Newick.class, Rep.class, NTaxa.class, NodeCount.class};
+                GTR.class, BinaryRateMatrix.class, Newick.class, Rep.class, NTaxa.class, NodeCount.class, DiscretizedGammaRates.class};
 
         for (Class<?> functionClass : functionClasses) {
             addGenerator(functionClass, functionDictionary);
@@ -5,4 +5,15 @@ public interface Loggable<U> {
     String[] getLogTitles(Value<U> value);
 
     String[] getLogValues(Value<U> value);
+
+    /**
+     * Appends the log values to the builder, each preceded by a tab.
+     * Override to append numbers directly instead of creating a String for each value.
+     */
+    default void appendLogValues(Value<U> value, StringBuilder builder) {
+        for (String logValue : getLogValues(value)) {
+            builder.append("\t");
+            builder.append(logValue);
+        }
+    }
 }
@@ -18,6 +18,12 @@ public class Value<T> implements GraphicalModelNode<T>, Viewable {
     // the function that produced this value, or null if this value was initialized another way;
     DeterministicFunction<T> function = null;
 
+    // true if setValue has changed this value since the values depending on it were last re-generated
+    private boolean dirty = false;
+
+    // incremented every time setValue is called, so cached results computed from this value can be checked
+    private long version = 0;
+
     public Value(String id, T value) {
         this.id = id;
         this.value = value;
@@ -129,6 +135,8 @@ public class Value<T> implements GraphicalModelNode<T>, Viewable {
 
     public void setValue(T value) {
         this.value = value;
+        dirty = true;
+        version += 1;
         for (ValueListener listener : listeners) {
             listener.valueSet();
         }
@@ -199,6 +207,24 @@ public class Value<T> implements GraphicalModelNode<T>, Viewable {
         return (this instanceof RandomVariable) || (function != null && function.hasRandomParameters());
     }
 
+    /**
+     * @return the number of times this value has been changed with setValue.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if this value has been changed by setValue since the last incremental re-sample.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
     public void addValueListener(ValueListener listener) {
         listeners.add(listener);
     }
@@ -0,0 +1,245 @@
+package lphy.nexus;
+
+import lphy.core.functions.Newick;
+import lphy.core.functions.newickParser.NewickReader;
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the trees in a file, made in one pass over the memory-mapped file, from which each tree is parsed
+ * only when it is asked for. The file is either Nexus, with trees in a trees block as written by
+ * {@link TreesBlock} and {@link NexusWriter} (optionally with a translate table), or Newick, with trees ending in ';'.
+ * Only the offsets of the trees are held in memory.
+ */
+public class TreesFileIndex {
+
+    // the file is mapped in windows of this many bytes, as a single mapping is limited to 2GB
+    private static final int WINDOW_BITS = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_BITS;
+
+    private final File file;
+    private final MappedByteBuffer[] windows;
+
+    // the start and end of the Newick string of each tree, from the character after "=" to the ';'
+    private long[] treeStarts = new long[16];
+    private long[] treeEnds = new long[16];
+    private long[] nameStarts = new long[16];
+    private int treeCount = 0;
+
+    private Map<String, String> translate = null;
+
+    public TreesFileIndex(String fileName) throws IOException {
+        this(new File(fileName));
+    }
+
+    public TreesFileIndex(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long size = channel.size();
+            windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >> WINDOW_BITS)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_BITS;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            }
+            index(size);
+        }
+    }
+
+    private byte get(long pos) {
+        return windows[(int) (pos >> WINDOW_BITS)].get((int) (pos & (WINDOW_SIZE - 1)));
+    }
+
+    private String getString(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private long skipWhitespace(long pos, long end) {
+        while (pos < end && isWhitespace(get(pos))) pos += 1;
+        return pos;
+    }
+
+    // true if the word, in lower case, is at pos and is followed by whitespace, ';' or the end
+    private boolean isWord(long pos, long end, String word) {
+        if (end - pos < word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(get(pos + i)) != word.charAt(i)) return false;
+        }
+        return pos + word.length() == end || isWhitespace(get(pos + word.length())) || get(pos + word.length()) == ';';
+    }
+
+    /**
+     * Splits the file into statements ending in ';' outside of quotes and [comments], recording the trees.
+     */
+    private void index(long size) throws IOException {
+
+        long pos = skipWhitespace(0, size);
+        boolean nexus = isWord(pos, size, "#nexus");
+        if (nexus) pos += "#nexus".length();
+        boolean inTreesBlock = false;
+
+        while (pos < size) {
+            long start = skipWhitespace(pos, size);
+            if (start == size) break;
+
+            // find the end of the statement
+            long end = start;
+            int depth = 0;
+            byte quote = 0;
+            while (end < size) {
+                byte b = get(end);
+                // quotes inside comments, such as [this file's trees], are not quotes
+                if (quote != 0) {
+                    if (b == quote) quote = 0;
+                } else if (b == '[') {
+                    depth += 1;
+                } else if (b == ']') {
+                    if (depth > 0) depth -= 1;
+                } else if (depth == 0) {
+                    if (b == '\'' || b == '"') quote = b;
+                    else if (b == ';') break;
+                }
+                end += 1;
+            }
+            pos = end + 1;
+
+            // the statement may start with comments, such as a comment before "begin trees"
+            if (nexus) start = skipComments(start, end);
+
+            if (!nexus) {
+                if (end > start) addTree(start, end, -1);
+            } else if (isWord(start, end, "begin")) {
+                inTreesBlock = isWord(skipWhitespace(start + "begin".length(), end), end, "trees");
+            } else if (isWord(start, end, "end") || isWord(start, end, "endblock")) {
+                inTreesBlock = false;
+            } else if (inTreesBlock && isWord(start, end, "translate")) {
+                readTranslate(start + "translate".length(), end);
+            } else if (inTreesBlock && isWord(start, end, "tree")) {
+                // the name may be followed by comments, such as [&lnP=...], before the '='
+                long equals = skipComments(skipWhitespace(start + "tree".length(), end), end);
+                while (equals < end && get(equals) != '=') equals = skipComments(equals + 1, end);
+                if (equals == end) throw new IOException("Expected '=' in tree statement of " + file + " at byte " + start);
+                // skip the [&R] or [&U] rooting comment, and any others
+                long newick = skipComments(equals + 1, end);
+                addTree(newick, end, skipWhitespace(start + "tree".length(), end));
+            }
+        }
+    }
+
+    // skips whitespace and bracketed comments, which may be nested as they are in index
+    private long skipComments(long pos, long end) {
+        pos = skipWhitespace(pos, end);
+        while (pos < end && get(pos) == '[') {
+            int depth = 0;
+            do {
+                byte b = get(pos);
+                if (b == '[') depth += 1;
+                else if (b == ']') depth -= 1;
+                pos += 1;
+            } while (pos < end && depth > 0);
+            pos = skipWhitespace(pos, end);
+        }
+        return pos;
+    }
+
+    private void addTree(long start, long end, long nameStart) {
+        if (treeCount == treeStarts.length) {
+            treeStarts = Arrays.copyOf(treeStarts, treeCount * 2);
+            treeEnds = Arrays.copyOf(treeEnds, treeCount * 2);
+            nameStarts = Arrays.copyOf(nameStarts, treeCount * 2);
+        }
+        treeStarts[treeCount] = start;
+        treeEnds[treeCount] = end;
+        nameStarts[treeCount] = nameStart;
+        treeCount += 1;
+    }
+
+    // the pairs of a translate statement: key taxon (',' key taxon)*
+    private void readTranslate(long start, long end) {
+        translate = new HashMap<>();
+        for (String pair : getString(start, end).split(",")) {
+            String[] words = pair.trim().split("\\s+", 2);
+            if (words.length == 2) {
+                String taxon = words[1].trim();
+                if (taxon.length() > 1 && taxon.startsWith("'") && taxon.endsWith("'")) {
+                    taxon = taxon.substring(1, taxon.length() - 1);
+                }
+                translate.put(words[0], taxon);
+            }
+        }
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= treeCount) throw new IndexOutOfBoundsException("Tree " + i + " of " + treeCount + " in " + file);
+    }
+
+    /**
+     * @return the number of trees in the file.
+     */
+    public int size() {
+        return treeCount;
+    }
+
+    /**
+     * @return the name of the tree in its Nexus tree statement, or "TREE_i" for a Newick file.
+     */
+    public String getTreeName(int i) {
+        checkIndex(i);
+        if (nameStarts[i] < 0) return "TREE_" + i;
+        long end = nameStarts[i];
+        while (get(end) != '=' && get(end) != '[' && !isWhitespace(get(end))) end += 1;
+        return getString(nameStarts[i], end);
+    }
+
+    /**
+     * @return the Newick string of the tree, without the ';'.
+     */
+    public String getNewick(int i) {
+        checkIndex(i);
+        return getString(treeStarts[i], treeEnds[i]);
+    }
+
+    /**
+     * Parses the i'th tree of the file, with leaf ids translated if the file has a translate table.
+     */
+    public TimeTree getTree(int i) {
+        String newick = getNewick(i);
+        TimeTree tree = NewickReader.read(newick);
+        if (tree == null) tree = Newick.parseNewickWithANTLR(newick);
+
+        if (translate != null) {
+            for (TimeTreeNode node : tree.getNodes()) {
+                if (node.isLeaf()) {
+                    String taxon = translate.get(node.getId());
+                    if (taxon != null) node.setId(taxon);
+                }
+            }
+        }
+        return tree;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String toString() {
+        return treeCount + " trees in " + file.getName();
+    }
+}
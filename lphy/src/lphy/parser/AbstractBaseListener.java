@@ -9,6 +9,7 @@ import lphy.evolution.birthdeath.*;
 import lphy.evolution.branchrates.LocalBranchRates;
 import lphy.evolution.coalescent.*;
 import lphy.evolution.likelihood.PhyloCTMC;
+import lphy.evolution.tree.EmpiricalTree;
 import lphy.evolution.substitutionmodel.*;
 import lphy.toroidalDiffusion.*;
 import lphy.graphicalModel.Generator;
@@ -37,9 +38,9 @@ public class AbstractBaseListener extends SimulatorBaseListener {
                 Normal.class, NormalMulti.class,  LogNormal.class, LogNormalMulti.class, Exp.class, ExpMulti.class,
                 Coalescent.class, PhyloCTMC.class, PhyloBrownian.class, PhyloCircularBrownian.class,
                 PhyloCircularOU.class, PhyloOU.class, PhyloToroidalBrownian.class, PhyloWrappedBivariateDiffusion.class,
-                Dirichlet.class, Gamma.class, DiscretizedGamma.class, ErrorModel.class, Yule.class, Beta.class,
-                MultispeciesCoalescent.class, Poisson.class, RandomComposition.class, RandomBooleanArray.class, SerialCoalescent.class,
-                SkylineCoalescent.class, StructuredCoalescent.class};
+                Dirichlet.class, Gamma.class, DiscretizedGamma.class, DiscretizedGammaCategories.class, ErrorModel.class, Yule.class, Beta.class,
+                MultispeciesCoalescent.class, MultispeciesCoalescentMulti.class, Poisson.class, RandomComposition.class, RandomBooleanArray.class, SerialCoalescent.class,
+                SkylineCoalescent.class, StructuredCoalescent.class, EmpiricalTree.class};
 
         for (Class<?> genClass : genClasses) {
             String name = Generator.getGeneratorName(genClass);
@@ -49,7 +50,8 @@ public class AbstractBaseListener extends SimulatorBaseListener {
         }
 
         Class<?>[] functionClasses = {ARange.class, lphy.core.functions.Exp.class, JukesCantor.class, K80.class, F81.class, HKY.class, GTR.class, LocalBranchRates.class, lphy.core.functions.Map.class,
-                Newick.class, BinaryRateMatrix.class, NodeCount.class, MigrationMatrix.class, MigrationCount.class, Range.class, RootAge.class, DihedralAngleDiffusionMatrix.class};
+                Newick.class, BinaryRateMatrix.class, NodeCount.class, MigrationMatrix.class, MigrationCount.class, Range.class, RootAge.class, DihedralAngleDiffusionMatrix.class,
+                DiscretizedGammaRates.class, ReadTrees.class};
 
         for (Class<?> functionClass : functionClasses) {
 
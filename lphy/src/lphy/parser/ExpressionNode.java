@@ -42,6 +42,15 @@ abstract public class ExpressionNode<T> extends DeterministicFunction<T> impleme
 		return expression;
 	}
 
+	/**
+	 * Expressions are cheap to evaluate, and their params map does not cover all of their inputValues
+	 * (anonymous inputs share a key), so they are always re-applied rather than cached.
+	 */
+	@Override
+	public Value<T> generate() {
+		return apply();
+	}
+
 	@Override
 	public List<GraphicalModelNode> getInputs() {
 		return new ArrayList<>(params.values());
@@ -110,6 +110,12 @@ public class ExpressionNodeWrapper extends DeterministicFunction {
         return applyRecursively();
     }
 
+    // the params of a wrapper only cover the named inputs of the wrapped expression, so it is never cached
+    @Override
+    public Value generate() {
+        return apply();
+    }
+
     public Value applyRecursively() {
         Value v =  applyRecursively(nodeToWrap);
         v.setFunction(this);
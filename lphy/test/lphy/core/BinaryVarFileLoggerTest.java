@@ -0,0 +1,102 @@
+package lphy.core;
+
+import lphy.graphicalModel.RandomVariable;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryVarFileLoggerTest extends TestCase {
+
+    private List<RandomVariable<?>> variables(int rep) {
+        List<RandomVariable<?>> variables = new ArrayList<>();
+        variables.add(new RandomVariable<>("Θ", 0.1 * rep, null));
+        variables.add(new RandomVariable<>("n", rep, null));
+        variables.add(new RandomVariable<>("x", new Double[]{1.0 / (rep + 1), rep == 7 ? Double.NaN : -2e-10}, null));
+        variables.add(new RandomVariable<>("ignored", "not loggable", null));
+        return variables;
+    }
+
+    public void testRoundTripsWithTabSeparatedLog() throws IOException {
+
+        File dir = Files.createTempDirectory("binaryVarFileLogger").toFile();
+        String name = new File(dir, "test").getPath();
+
+        // blocks of a few reps each
+        BinaryVarFileLogger binaryLogger = new BinaryVarFileLogger(name, 128, Long.MAX_VALUE);
+        VarFileLogger logger = new VarFileLogger(name);
+        for (int rep = 0; rep < 100; rep++) {
+            binaryLogger.log(rep, variables(rep));
+            logger.log(rep, variables(rep));
+        }
+        binaryLogger.close();
+        logger.close();
+
+        BinaryLogReader reader = new BinaryLogReader(name + ".binlog");
+        assertEquals(100, reader.getRowCount());
+        assertEquals(5, reader.getColumnCount());
+        assertTrue(reader.isIntColumn(0));
+        assertTrue(reader.isIntColumn(2));
+        assertFalse(reader.isIntColumn(1));
+        assertTrue(reader.getDoubleBuffers(1).size() > 1);
+
+        // the binary log prints as the tab-separated log
+        StringBuilder text = new StringBuilder();
+        reader.writeLog(text);
+        String log = new String(Files.readAllBytes(new File(name + ".log").toPath()), StandardCharsets.UTF_8);
+        assertEquals(log, text.toString());
+
+        // and the tab-separated values parse to the binary columns
+        String[] lines = log.split("\n");
+        assertEquals(String.join("\t", reader.getTitles()), lines[0]);
+        for (int column = 0; column < reader.getColumnCount(); column++) {
+            double[] values = reader.getColumn(column);
+            for (int row = 0; row < values.length; row++) {
+                double parsed = Double.parseDouble(lines[row + 1].split("\t")[column]);
+                assertEquals(Double.doubleToLongBits(parsed), Double.doubleToLongBits(values[row]));
+            }
+        }
+        int[] n = reader.getIntColumn(reader.getColumnIndex("n"));
+        for (int rep = 0; rep < 100; rep++) assertEquals(rep, n[rep]);
+
+        int read = 0;
+        for (DoubleBuffer block : reader.getDoubleBuffers(reader.getColumnIndex("Θ"))) {
+            while (block.hasRemaining()) assertEquals(0.1 * read++, block.get());
+        }
+        assertEquals(100, read);
+
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    public void testIgnoresIncompleteBlock() throws IOException {
+
+        File dir = Files.createTempDirectory("binaryVarFileLogger").toFile();
+        String name = new File(dir, "test").getPath();
+
+        // one block per rep
+        BinaryVarFileLogger logger = new BinaryVarFileLogger(name, 0, Long.MAX_VALUE);
+        for (int rep = 0; rep < 10; rep++) {
+            logger.log(rep, variables(rep));
+        }
+        logger.close();
+
+        File file = new File(name + ".binlog");
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(truncated.length() - 3);
+        }
+
+        BinaryLogReader reader = new BinaryLogReader(file);
+        assertEquals(9, reader.getRowCount());
+        assertEquals(8.0, reader.getColumn("sample")[8]);
+
+        file.delete();
+        dir.delete();
+    }
+}
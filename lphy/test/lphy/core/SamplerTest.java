@@ -0,0 +1,199 @@
+package lphy.core;
+
+import junit.framework.TestCase;
+import lphy.app.GraphicalLPhyParser;
+import lphy.evolution.alignment.Alignment;
+import lphy.graphicalModel.Generator;
+import lphy.graphicalModel.RandomVariable;
+import lphy.graphicalModel.RandomVariableLogger;
+import lphy.graphicalModel.Value;
+import lphy.parser.REPL;
+
+import java.util.*;
+
+public class SamplerTest extends TestCase {
+
+    static final String[] MODEL = {
+            "theta ~ LogNormal(meanlog=3.0, sdlog=1.0);",
+            "tree ~ Coalescent(n=8, theta=theta);",
+            "D ~ PhyloCTMC(L=20, Q=jukesCantor(), tree=tree);"
+    };
+
+    public void testParallelSamplingIsIndependentOfThreadCount() {
+
+        List<String> oneThread = sampleInParallel(37, 1, 42);
+        List<String> threeThreads = sampleInParallel(37, 3, 42);
+
+        assertEquals(37, oneThread.size());
+        assertEquals(oneThread, threeThreads);
+    }
+
+    public void testParallelSamplingDependsOnSeed() {
+        assertFalse(sampleInParallel(5, 2, 1).equals(sampleInParallel(5, 2, 2)));
+    }
+
+    public void testResampleOnlyRegeneratesDownstreamOfChangedConstants() {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        parser.parse("lambda = 2.0;");
+        parser.parse("tree ~ Yule(birthRate=lambda, n=6);");
+        parser.parse("x ~ Normal(mean=0.0, sd=1.0);");
+
+        Sampler sampler = new Sampler(parser);
+        sampler.sample(1, null);
+
+        Value<?> tree = parser.getDictionary().get("tree");
+        Value<?> x = parser.getDictionary().get("x");
+
+        // nothing has changed, so nothing is re-generated
+        sampler.resample();
+        assertSame(tree, parser.getDictionary().get("tree"));
+        assertSame(x, parser.getDictionary().get("x"));
+
+        ((Value<Double>) parser.getDictionary().get("lambda")).setValue(20.0);
+        sampler.resample();
+        assertNotSame(tree, parser.getDictionary().get("tree"));
+        assertSame(x, parser.getDictionary().get("x"));
+
+        // a full sample re-generates everything
+        sampler.sample(1, null);
+        assertNotSame(x, parser.getDictionary().get("x"));
+    }
+
+    public void testPlanIsRecompiledWhenModelChanges() {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        parser.parse("x ~ Normal(mean=0.0, sd=1.0);");
+
+        Sampler sampler = new Sampler(parser);
+        sampler.sample(1, null);
+        SamplingPlan plan = sampler.plan;
+        sampler.sample(1, null);
+        assertSame(plan, sampler.plan);
+        assertEquals(1, plan.getRandomVariables().size());
+
+        // a new variable that depends on x
+        parser.parse("y ~ Normal(mean=x, sd=0.001);");
+        sampler.sample(1, null);
+        assertNotSame(plan, sampler.plan);
+        List<RandomVariable<?>> variables = sampler.plan.getRandomVariables();
+        assertEquals(2, variables.size());
+        double x = (Double) parser.getDictionary().get("x").value();
+        double y = (Double) parser.getDictionary().get("y").value();
+        assertEquals(x, y, 0.01);
+
+        // x redefined, far from its old distribution
+        plan = sampler.plan;
+        parser.parse("x ~ Normal(mean=100.0, sd=0.001);");
+        sampler.sample(1, null);
+        assertNotSame(plan, sampler.plan);
+        assertEquals(100.0, (Double) parser.getDictionary().get("x").value(), 0.01);
+        assertEquals(100.0, (Double) parser.getDictionary().get("y").value(), 0.02);
+    }
+
+    public void testPlanIsRecompiledWhenSameModelIsParsedAgain() {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        for (String line : MODEL) {
+            parser.parse(line);
+        }
+        Sampler sampler = new Sampler(parser);
+        sampler.sample(1, null);
+        SamplingPlan plan = sampler.plan;
+
+        // as the Studio does when an example is loaded again
+        parser.clear();
+        for (String line : MODEL) {
+            parser.parse(line);
+        }
+        Map<String, Generator<?>> generators = new HashMap<>();
+        for (Map.Entry<String, Value<?>> entry : parser.getDictionary().entrySet()) {
+            generators.put(entry.getKey(), entry.getValue().getGenerator());
+        }
+
+        sampler.sample(1, null);
+        assertNotSame(plan, sampler.plan);
+        assertEquals(generators.keySet(), parser.getDictionary().keySet());
+        for (String id : Arrays.asList("theta", "tree", "D")) {
+            assertSame(generators.get(id), parser.getDictionary().get(id).getGenerator());
+        }
+    }
+
+    public void testParallelSamplingUsesEditedConstants() {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        parser.parse("lambda = 2.0;");
+        parser.parse("tree ~ Yule(birthRate=lambda, n=6);");
+        parser.parse("D ~ PhyloCTMC(L=20, Q=jukesCantor(), tree=tree);");
+
+        // edited as the Studio's update does, so the source no longer holds the value
+        Sampler sampler = new Sampler(parser);
+        sampler.sample(1, null);
+        ((Value<Double>) parser.getDictionary().get("lambda")).setValue(20.0);
+        sampler.resample();
+
+        List<String> oneThread = sampleInParallel(parser, 20, 1, 42);
+        assertEquals(oneThread, sampleInParallel(parser, 20, 3, 42));
+
+        // the same as a model written with the edited value
+        GraphicalLPhyParser edited = new GraphicalLPhyParser(new REPL());
+        edited.parse("lambda = 20.0;");
+        edited.parse("tree ~ Yule(birthRate=lambda, n=6);");
+        edited.parse("D ~ PhyloCTMC(L=20, Q=jukesCantor(), tree=tree);");
+        assertEquals(sampleInParallel(edited, 20, 3, 42), oneThread);
+        assertEquals(20.0, parser.getDictionary().get("lambda").value());
+    }
+
+    public void testParallelSamplingLeavesLastReplicateInParser() {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        for (String line : MODEL) {
+            parser.parse(line);
+        }
+        int[] notifications = {0};
+        parser.addGraphicalModelChangeListener(() -> notifications[0] += 1);
+
+        List<String> logged = sampleInParallel(parser, 9, 3, 42);
+
+        assertEquals(logged.get(logged.size() - 1), format(LPhyParser.Utils.getAllVariablesFromSinks(parser)));
+        assertTrue(notifications[0] > 0);
+    }
+
+    private static String format(List<RandomVariable<?>> variables) {
+        StringBuilder builder = new StringBuilder();
+        for (RandomVariable<?> variable : variables) {
+            Object value = variable.value();
+            if (value instanceof Alignment) value = ((Alignment) value).toJSON();
+            builder.append(variable.getId()).append("=").append(value).append(";");
+        }
+        return builder.toString();
+    }
+
+    private List<String> sampleInParallel(int reps, int threads, long seed) {
+
+        GraphicalLPhyParser parser = new GraphicalLPhyParser(new REPL());
+        for (String line : MODEL) {
+            parser.parse(line);
+        }
+        return sampleInParallel(parser, reps, threads, seed);
+    }
+
+    private List<String> sampleInParallel(GraphicalLPhyParser parser, int reps, int threads, long seed) {
+
+        List<String> logged = Collections.synchronizedList(new ArrayList<>());
+        RandomVariableLogger logger = new RandomVariableLogger() {
+            @Override
+            public void log(int rep, List<RandomVariable<?>> variables) {
+                assertEquals(logged.size(), rep);
+                logged.add(format(variables));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        new Sampler(parser).sample(reps, Collections.singletonList(logger), threads, seed);
+        return logged;
+    }
+}
@@ -0,0 +1,61 @@
+package lphy.core;
+
+import lphy.evolution.coalescent.Coalescent;
+import lphy.evolution.tree.TimeTree;
+import lphy.graphicalModel.RandomVariable;
+import lphy.graphicalModel.Value;
+import lphy.nexus.NexusWriter;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TreeFileLoggerTest extends TestCase {
+
+    public void testSameOutputAsNexusWriter() throws Exception {
+
+        File dir = Files.createTempDirectory("treeFileLogger").toFile();
+        String name = new File(dir, "test").getPath();
+
+        Coalescent coalescent = new Coalescent(new Value<>("theta", 1.0), new Value<>("n", 5));
+
+        List<TimeTree> trees = new ArrayList<>();
+        // a small buffer that fills several times
+        TreeFileLogger logger = new TreeFileLogger(name, 100, Long.MAX_VALUE);
+        for (int rep = 0; rep < 20; rep++) {
+            RandomVariable<TimeTree> tree = coalescent.sample();
+            tree.setId("ψ");
+            trees.add(tree.value());
+
+            List<RandomVariable<?>> variables = new ArrayList<>();
+            variables.add(new RandomVariable<>("x", 1.0, null));
+            variables.add(tree);
+            logger.log(rep, variables);
+        }
+        logger.close();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        NexusWriter.write(null, trees, new PrintStream(expected, true, "UTF-8"));
+
+        // one file, for the tree variable
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try (FileInputStream in = new FileInputStream(new File(name + "_ψ.trees"))) {
+            byte[] bytes = new byte[4096];
+            for (int read = in.read(bytes); read != -1; read = in.read(bytes)) {
+                written.write(bytes, 0, read);
+            }
+        }
+        assertEquals(expected.toString("UTF-8"), written.toString("UTF-8"));
+
+        files[0].delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,75 @@
+package lphy.core;
+
+import lphy.graphicalModel.RandomVariable;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VarFileLoggerTest extends TestCase {
+
+    private List<RandomVariable<?>> variables(int rep) {
+        List<RandomVariable<?>> variables = new ArrayList<>();
+        variables.add(new RandomVariable<>("Θ", 0.1 * rep, null));
+        variables.add(new RandomVariable<>("n", rep, null));
+        variables.add(new RandomVariable<>("x", new Double[]{1.0 / (rep + 1), 2e-10}, null));
+        variables.add(new RandomVariable<>("ignored", "not loggable", null));
+        return variables;
+    }
+
+    private String expected(int reps) {
+        StringBuilder builder = new StringBuilder("sample\tΘ\tn\tx.0\tx.1\n");
+        for (int rep = 0; rep < reps; rep++) {
+            builder.append(rep).append("\t").append(Double.toString(0.1 * rep)).append("\t").append(rep)
+                    .append("\t").append(Double.toString(1.0 / (rep + 1))).append("\t").append(Double.toString(2e-10)).append("\n");
+        }
+        return builder.toString();
+    }
+
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    public void testStreamsLinesAsLogged() throws IOException {
+
+        File dir = Files.createTempDirectory("varFileLogger").toFile();
+        String name = new File(dir, "test").getPath();
+
+        // a buffer smaller than one line, flushed at every rep
+        VarFileLogger logger = new VarFileLogger(name, 16, 0);
+        for (int rep = 0; rep < 100; rep++) {
+            logger.log(rep, variables(rep));
+        }
+
+        // everything logged so far is in the file before close
+        assertEquals(expected(100), read(new File(name + ".log")));
+
+        logger.close();
+        assertEquals(expected(100), read(new File(name + ".log")));
+
+        // logging from rep 0 again starts a new file
+        logger = new VarFileLogger(name);
+        for (int rep = 0; rep < 3; rep++) {
+            logger.log(rep, variables(rep));
+        }
+        logger.close();
+        assertEquals(expected(3), read(new File(name + ".log")));
+
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    public void testFormatsLikeDoubleToString() {
+
+        StringBuilder builder = new StringBuilder();
+        for (double x : new double[]{0.1, 1e-7, 123456789.0, Double.NaN, -0.0, Double.MAX_VALUE}) {
+            builder.setLength(0);
+            VarFileLogger.loggableMap.get(Double.class).appendLogValues(new RandomVariable<>("x", x, null), builder);
+            assertEquals("\t" + Double.toString(x), builder.toString());
+        }
+    }
+}
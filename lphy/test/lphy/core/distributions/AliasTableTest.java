@@ -0,0 +1,59 @@
+package lphy.core.distributions;
+
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+public class AliasTableTest extends TestCase {
+
+    public void testSampleFrequencies() {
+
+        double[] p = {0.1, 0.2, 0.3, 0.4};
+
+        AliasTable table = new AliasTable(p);
+        RandomGenerator random = new MersenneTwister(777);
+
+        int reps = 200000;
+        int[] counts = new int[p.length];
+        for (int i = 0; i < reps; i++) {
+            counts[table.sample(random)] += 1;
+        }
+
+        for (int i = 0; i < p.length; i++) {
+            assertEquals(p[i], counts[i] / (double) reps, 0.005);
+        }
+    }
+
+    public void testUnnormalisedProbabilities() {
+
+        // sums to just under 1.0, as can happen with a numerically computed transition matrix
+        double[] p = {0.25, 0.25, 0.25, 0.25 - 1e-9};
+
+        AliasTable table = new AliasTable(p);
+
+        // a fine grid over [0, 1) should reproduce the probabilities almost exactly
+        int steps = 100000;
+        int[] counts = new int[p.length];
+        for (int i = 0; i < steps; i++) {
+            counts[table.sample((i + 0.5) / steps)] += 1;
+        }
+        for (int i = 0; i < p.length; i++) {
+            assertEquals(0.25, counts[i] / (double) steps, 1e-4);
+        }
+
+        int state = table.sample(1.0 - 1e-16);
+        assertTrue(state >= 0 && state < p.length);
+    }
+
+    public void testZeroProbabilityStateNeverSampled() {
+
+        double[] p = {0.5, 0.0, 0.5};
+
+        AliasTable table = new AliasTable(p);
+        RandomGenerator random = new MersenneTwister(777);
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(table.sample(random) != 1);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package lphy.core.distributions;
+
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class DiscretizedGammaCategoriesTest extends TestCase {
+
+    public void testCategoriesAreEquallyLikely() {
+
+        int ncat = 4;
+        int reps = 40000;
+        DiscretizedGammaCategories categories = new DiscretizedGammaCategories(new Value<>("ncat", ncat), new Value<>("reps", reps));
+
+        Utils.setThreadRandom(new MersenneTwister(1));
+        Integer[] x;
+        try {
+            x = categories.sample().value();
+        } finally {
+            Utils.setThreadRandom(null);
+        }
+
+        assertEquals(reps, x.length);
+        int[] counts = new int[ncat];
+        for (int category : x) {
+            assertTrue(category >= 0 && category < ncat);
+            counts[category] += 1;
+        }
+        for (int count : counts) {
+            assertEquals(1.0 / ncat, count / (double) reps, 0.01);
+        }
+    }
+
+    public void testParams() {
+
+        DiscretizedGammaCategories categories = new DiscretizedGammaCategories(new Value<>("ncat", 4), null);
+        assertEquals(1, categories.sample().value().length);
+        assertFalse(categories.getParams().containsKey("reps"));
+
+        categories.setParam("reps", new Value<>("reps", 3));
+        assertEquals(3, categories.sample().value().length);
+
+        try {
+            categories.setParam("ncat", new Value<>("ncat", 4.0));
+            fail("ncat must be an integer");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package lphy.core.distributions;
+
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+public class FenwickTreeTest extends TestCase {
+
+    public void testFind() {
+
+        double[] w = {1.0, 0.0, 2.0, 3.0, 0.0};
+
+        FenwickTree tree = new FenwickTree(w.length);
+        for (int i = 0; i < w.length; i++) {
+            tree.set(i, w[i]);
+        }
+
+        assertEquals(6.0, tree.total(), 1e-12);
+        assertEquals(0, tree.find(0.0));
+        assertEquals(0, tree.find(0.999));
+        assertEquals(2, tree.find(1.0));
+        assertEquals(2, tree.find(2.5));
+        assertEquals(3, tree.find(3.0));
+        assertEquals(3, tree.find(5.999));
+        // past the total, as rounding could give, still lands on a weighted index
+        assertEquals(3, tree.find(6.0));
+    }
+
+    public void testSampleFrequenciesAfterUpdates() {
+
+        FenwickTree tree = new FenwickTree(7);
+        for (int i = 0; i < tree.size(); i++) {
+            tree.set(i, 5.0);
+        }
+        double[] p = {0.1, 0.0, 0.2, 0.0, 0.3, 0.0, 0.4};
+        for (int i = 0; i < p.length; i++) {
+            tree.set(i, p[i] * 10.0);
+        }
+        assertEquals(10.0, tree.total(), 1e-12);
+
+        RandomGenerator random = new MersenneTwister(777);
+
+        int reps = 200000;
+        int[] counts = new int[p.length];
+        for (int i = 0; i < reps; i++) {
+            counts[tree.sample(random)] += 1;
+        }
+
+        for (int i = 0; i < p.length; i++) {
+            assertEquals(p[i], counts[i] / (double) reps, 0.005);
+        }
+    }
+
+    public void testTotalAfterManyUpdates() {
+
+        FenwickTree tree = new FenwickTree(13);
+        RandomGenerator random = new MersenneTwister(18);
+        double[] weights = new double[tree.size()];
+        for (int update = 0; update < 100000; update++) {
+            int i = random.nextInt(weights.length);
+            weights[i] = random.nextDouble() * Math.pow(10.0, random.nextInt(7) - 3);
+            tree.set(i, weights[i]);
+        }
+
+        double sum = 0.0;
+        for (double weight : weights) sum += weight;
+        assertEquals(sum, tree.total(), sum * 1e-12);
+
+        // no rounding error is left over once every weight is zero
+        for (int i = 0; i < weights.length; i++) {
+            tree.set(i, 0.0);
+        }
+        assertEquals(0.0, tree.total());
+    }
+}
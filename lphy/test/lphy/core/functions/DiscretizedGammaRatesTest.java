@@ -0,0 +1,49 @@
+package lphy.core.functions;
+
+import lphy.core.distributions.DiscretizedGamma;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+
+public class DiscretizedGammaRatesTest extends TestCase {
+
+    public void testRatesHaveMeanOne() {
+
+        for (double shape : new double[]{0.25, 0.5, 1.0, 5.0}) {
+            for (int ncat : new int[]{1, 4, 10}) {
+                Double[] rates = new DiscretizedGammaRates(new Value<>("shape", shape), new Value<>("ncat", ncat)).apply().value();
+                assertEquals(ncat, rates.length);
+
+                double sum = 0.0;
+                for (int i = 0; i < rates.length; i++) {
+                    assertTrue(rates[i] > 0.0);
+                    if (i > 0) assertTrue(rates[i] > rates[i - 1]);
+                    sum += rates[i];
+                }
+                assertEquals(1.0, sum / ncat, 1e-12);
+            }
+        }
+    }
+
+    public void testSameRatesAsG() {
+
+        Double[] rates = new DiscretizedGammaRates(new Value<>("shape", 0.5), new Value<>("ncat", 4)).apply().value();
+
+        // every site rate drawn from G is one of the category rates
+        Double[] siteRates = new DiscretizedGamma(new Value<>("shape", 0.5), new Value<>("ncat", 4), new Value<>("reps", 100)).sample().value();
+        for (double siteRate : siteRates) {
+            boolean found = false;
+            for (double rate : rates) {
+                if (rate == siteRate) found = true;
+            }
+            assertTrue(found);
+        }
+
+        // an integer shape gives the same rates
+        Double[] integerShapeRates = new DiscretizedGammaRates(new Value<>("shape", 2), new Value<>("ncat", 4)).apply().value();
+        Double[] doubleShapeRates = new DiscretizedGammaRates(new Value<>("shape", 2.0), new Value<>("ncat", 4)).apply().value();
+        assertEquals(doubleShapeRates.length, integerShapeRates.length);
+        for (int i = 0; i < doubleShapeRates.length; i++) {
+            assertEquals(doubleShapeRates[i], integerShapeRates[i]);
+        }
+    }
+}
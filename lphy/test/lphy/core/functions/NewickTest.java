@@ -0,0 +1,108 @@
+package lphy.core.functions;
+
+import lphy.core.functions.newickParser.NewickReader;
+import lphy.core.functions.newickParser.TreeParsingException;
+import lphy.evolution.coalescent.Coalescent;
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class NewickTest extends TestCase {
+
+    private void assertSameTree(TimeTree expected, TimeTree actual) {
+        assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        assertEquals(expected.n(), actual.n());
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            TimeTreeNode e = expected.getNodeByIndex(i);
+            TimeTreeNode a = actual.getNodeByIndex(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getLeafIndex(), a.getLeafIndex());
+            assertEquals(Double.doubleToLongBits(e.getAge()), Double.doubleToLongBits(a.getAge()));
+            assertEquals(e.isRoot() ? -1 : e.getParent().getIndex(), a.isRoot() ? -1 : a.getParent().getIndex());
+            assertEquals(e.getChildCount(), a.getChildCount());
+            for (int j = 0; j < e.getChildCount(); j++) {
+                assertEquals(e.getChildren().get(j).getIndex(), a.getChildren().get(j).getIndex());
+            }
+            assertEquals(e.getMetaData().keySet(), a.getMetaData().keySet());
+            for (Map.Entry<String, Object> entry : e.getMetaData().entrySet()) {
+                Object value = a.getMetaData(entry.getKey());
+                assertEquals(entry.getValue().getClass(), value.getClass());
+                assertTrue(entry.getKey(), Arrays.deepEquals(new Object[]{entry.getValue()}, new Object[]{value}));
+            }
+        }
+    }
+
+    public void testSameTreeAsANTLRParser() {
+
+        String[] newicks = {
+                "((a:1.0,b:2.0):0.5,c:2.5);",
+                "(c:2.5,(b:2.0,a:1.0):0.5);",
+                "((a,b),(c,d));",
+                " ( ( a : 1 , b:1e-1 ) x:0.5 ,\n\tc:1.5E2 ) root ;",
+                "(a:1,b:2)",
+                "(,(,a));",
+                "((1:0.1,2:0.2):0.3,3:0.4);",
+                "(a[&rate=1.5,type=x]:1.0,b:[&rate=-2e-3]2.0)[&pos={1,2.5,3}]:0;",
+                "(a[&tags={x,y}]:1.0,b[&name='q r',k=\"v\"]:2.0);",
+                "('a b':1.0,\"c\":1.0);",
+                "(a:0.123456789012345678,b:-0.0,c:12345678901234567890,d:1e-300,e:9.999e22):1.0E-5;",
+                "((a:1,b:1):1,((c:1,d:1):1,(e:1,f:1):1):1);",
+        };
+
+        for (String newick : newicks) {
+            TimeTree expected = Newick.parseNewickWithANTLR(newick);
+            TimeTree tree = NewickReader.read(newick);
+            assertNotNull(newick, tree);
+            assertSameTree(expected, tree);
+        }
+    }
+
+    public void testFallsBackToANTLRParser() {
+
+        String[] newicks = {
+                "(a:1,b:1e+5);",
+                "(a:1,b:.5);",
+                "(a[&k={{1,2},3}]:1,b:1);",
+                "(a[&k=1, j=2]:1,b:1);",
+                "(a[&k=01]:1,b[&k=1e+5,j=1.]:1);",
+        };
+
+        for (String newick : newicks) {
+            assertNull(newick, NewickReader.read(newick));
+            assertSameTree(Newick.parseNewickWithANTLR(newick), Newick.parseNewick(newick));
+        }
+
+        for (String newick : new String[]{"(a:1,a:2);", "(a:1,b:1", "(a:1,b:x);", "(a:1,b:1);(c:1,d:1);"}) {
+            assertNull(newick, NewickReader.read(newick));
+            try {
+                Newick.parseNewick(newick);
+                fail(newick);
+            } catch (TreeParsingException e) {
+                // reported by the ANTLR parser
+            }
+        }
+    }
+
+    public void testSimulatedTrees() {
+
+        Coalescent coalescent = new Coalescent(new Value<>("theta", 1.0), new Value<>("n", 200));
+        for (int i = 0; i < 20; i++) {
+            String newick = coalescent.sample().value().toString();
+            TimeTree tree = NewickReader.read(newick);
+            assertNotNull(tree);
+            assertSameTree(Newick.parseNewickWithANTLR(newick), tree);
+        }
+    }
+
+    public void testReadsPartOfText() {
+
+        String text = "tree A = (a:1,b:2);\ntree B = ((c:1,d:1):1,e:2);\n";
+        int start = text.indexOf('(', text.indexOf("B"));
+        TimeTree tree = NewickReader.read(text, start, text.length() - 1);
+        assertSameTree(Newick.parseNewickWithANTLR("((c:1,d:1):1,e:2);"), tree);
+    }
+}
@@ -0,0 +1,129 @@
+package lphy.evolution.alignment;
+
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class AlignmentTest extends TestCase {
+
+    private Map<String, Integer> idMap(int taxa) {
+        Map<String, Integer> idMap = new TreeMap<>();
+        for (int i = 0; i < taxa; i++) {
+            idMap.put("t" + i, i);
+        }
+        return idMap;
+    }
+
+    public void testPackedStatesRoundTrip() {
+
+        RandomGenerator random = new MersenneTwister(777);
+
+        int taxa = 5;
+        int length = 203;
+
+        for (int numStates : new int[]{2, 4, 5, 16, 20, 61, 300}) {
+            Alignment alignment = new Alignment(taxa, length, idMap(taxa), numStates);
+            int[][] expected = new int[taxa][length];
+
+            // overwrite every site twice to check neighbouring sites are left alone
+            for (int rep = 0; rep < 2; rep++) {
+                for (int i = 0; i < taxa; i++) {
+                    for (int j = 0; j < length; j++) {
+                        expected[i][j] = random.nextInt(numStates);
+                        alignment.setState(i, j, expected[i][j]);
+                    }
+                }
+            }
+
+            assertEquals(taxa, alignment.n());
+            assertEquals(length, alignment.L());
+            for (int i = 0; i < taxa; i++) {
+                for (int j = 0; j < length; j++) {
+                    assertEquals(expected[i][j], alignment.getState(i, j));
+                }
+            }
+        }
+    }
+
+    public void testGetSequence() {
+
+        Alignment alignment = new Alignment(1, 4, idMap(1), 4);
+        alignment.setState(0, 0, 3);
+        alignment.setState(0, 1, 2);
+        alignment.setState(0, 2, 1);
+        alignment.setState(0, 3, 0);
+
+        assertEquals("TGCA", alignment.getSequence(0));
+    }
+
+    public void testSetStateByTaxonName() {
+
+        Alignment alignment = new Alignment(2, 3, idMap(2), 4);
+        alignment.setState("t1", 2, 3);
+        assertEquals(3, alignment.getState(1, 2));
+
+        // a state that would otherwise be masked into a valid-looking one
+        try {
+            alignment.setState("t1", 1, 4);
+            fail("state 4 is out of range");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, alignment.getState(1, 1));
+
+        try {
+            alignment.setState("t2", 0, 1);
+            fail("there is no taxon t2");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testTooLargeForAnArray() {
+
+        // 2^31 sites of 256 states take 2^28 words per taxon, so 8 taxa need 2^31 words
+        try {
+            new Alignment(8, Integer.MAX_VALUE, idMap(8), 256);
+            fail("the states do not fit in an array");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("2147483648 words"));
+        }
+    }
+
+    public void testSitePatterns() {
+
+        int[][] states = {
+                {0, 1, 0, 2, 0, 1},
+                {0, 1, 0, 3, 0, 1},
+                {1, 1, 1, 3, 2, 1}};
+
+        Alignment alignment = new Alignment(3, 6, idMap(3), 4);
+        for (int i = 0; i < states.length; i++) {
+            for (int j = 0; j < states[i].length; j++) {
+                alignment.setState(i, j, states[i][j]);
+            }
+        }
+
+        SitePatterns patterns = alignment.getSitePatterns();
+
+        assertEquals(4, patterns.getPatternCount());
+        assertEquals(6, patterns.getSiteCount());
+        assertEquals(2, patterns.getPatternWeight(patterns.getPatternIndex(0)));
+        assertEquals(2, patterns.getPatternWeight(patterns.getPatternIndex(1)));
+        assertEquals(patterns.getPatternIndex(1), patterns.getPatternIndex(5));
+        for (int i = 0; i < states.length; i++) {
+            for (int j = 0; j < states[i].length; j++) {
+                assertEquals(states[i][j], patterns.getPatternState(i, patterns.getPatternIndex(j)));
+            }
+        }
+
+        // changing a compressed site discards the patterns
+        alignment.setState(2, 4, 1);
+        patterns = alignment.getSitePatterns();
+        assertEquals(3, patterns.getPatternCount());
+        assertEquals(3, patterns.getPatternWeight(patterns.getPatternIndex(0)));
+    }
+}
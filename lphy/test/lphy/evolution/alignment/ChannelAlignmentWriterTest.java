@@ -0,0 +1,141 @@
+package lphy.evolution.alignment;
+
+import junit.framework.TestCase;
+import lphy.graphicalModel.RandomVariable;
+import lphy.nexus.NexusWriter;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ChannelAlignmentWriterTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("alignmentWriter").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    private static Alignment randomAlignment(int taxa, int length, int numStates, long seed) {
+        Map<String, Integer> idMap = new TreeMap<>();
+        for (int i = 0; i < taxa; i++) {
+            idMap.put("taxon" + i, i);
+        }
+        Alignment alignment = new Alignment(taxa, length, idMap, numStates);
+        RandomGenerator random = new MersenneTwister(seed);
+        for (int i = 0; i < taxa; i++) {
+            for (int j = 0; j < length; j++) {
+                alignment.setState(i, j, random.nextInt(numStates));
+            }
+        }
+        return alignment;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    // the sequence of each taxon in the file, in file order
+    private static Map<String, String> readSequences(String text, ChannelAlignmentWriter.Format format) {
+        Map<String, String> sequences = new LinkedHashMap<>();
+        switch (format) {
+            case fasta:
+                String[] lines = text.split("\n");
+                for (int i = 0; i < lines.length; i += 2) {
+                    assertTrue(lines[i].startsWith(">"));
+                    sequences.put(lines[i].substring(1), lines[i + 1]);
+                }
+                break;
+            case phylip:
+                lines = text.split("\n");
+                for (int i = 1; i < lines.length; i++) {
+                    String[] words = lines[i].split(" ");
+                    sequences.put(words[0], words[1]);
+                }
+                break;
+            case nexus:
+                String matrix = text.substring(text.indexOf("matrix") + "matrix".length(), text.indexOf(";", text.indexOf("matrix")));
+                for (String line : matrix.trim().split("\n")) {
+                    String[] words = line.trim().split(" ");
+                    sequences.put(words[0], words[1]);
+                }
+                break;
+        }
+        return sequences;
+    }
+
+    private static void assertSameSequences(Alignment alignment, Map<String, String> sequences) {
+        assertEquals(Arrays.asList(alignment.getTaxaNames()), new ArrayList<>(sequences.keySet()));
+        for (int i = 0; i < alignment.getTaxonCount(); i++) {
+            assertEquals(alignment.getSequence(i), sequences.get(alignment.getTaxaNames()[i]));
+        }
+    }
+
+    public void testLoggerRoundTrip() throws Exception {
+
+        Alignment alignment = randomAlignment(5, 150, 4, 1);
+        List<RandomVariable<?>> variables = Collections.singletonList(new RandomVariable<>("D", alignment, null));
+
+        for (ChannelAlignmentWriter.Format format : ChannelAlignmentWriter.Format.values()) {
+            AlignmentFileLogger logger = new AlignmentFileLogger(new File(dir, "model").getPath(), format);
+            logger.log(3, variables);
+            logger.close();
+
+            File file = new File(dir, "model_D_3." + format);
+            assertTrue(file.getPath(), file.exists());
+            assertSameSequences(alignment, readSequences(read(file), format));
+        }
+
+        // Nexus files are as NexusWriter writes them
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PrintStream stream = new PrintStream(bytes, true, "UTF-8")) {
+            NexusWriter.write(alignment, new ArrayList<>(), stream);
+        }
+        assertEquals(bytes.toString("UTF-8"), read(new File(dir, "model_D_3.nexus")));
+    }
+
+    public void testChunksWriteSameFileAsWholeAlignment() throws IOException {
+
+        Alignment alignment = randomAlignment(4, 100, 2, 2);
+
+        for (ChannelAlignmentWriter.Format format : ChannelAlignmentWriter.Format.values()) {
+            File whole = new File(dir, "whole." + format);
+            ChannelAlignmentWriter writer = new ChannelAlignmentWriter(whole.toPath(), format);
+            writer.start(alignment.getTaxaNames(), alignment.getDataTypeDescription(), alignment.L());
+            writer.write(alignment, 0);
+            writer.close();
+
+            // chunks of 30 sites, the last one shorter
+            File chunked = new File(dir, "chunked." + format);
+            writer = new ChannelAlignmentWriter(chunked.toPath(), format);
+            writer.start(alignment.getTaxaNames(), alignment.getDataTypeDescription(), alignment.L());
+            for (int start = 0; start < alignment.L(); start += 30) {
+                int end = Math.min(start + 30, alignment.L());
+                Alignment chunk = new Alignment(alignment.getTaxonCount(), end - start, alignment.idMap, 2);
+                for (int i = 0; i < alignment.getTaxonCount(); i++) {
+                    for (int j = start; j < end; j++) {
+                        chunk.setState(i, j - start, alignment.getState(i, j));
+                    }
+                }
+                writer.write(chunk, start);
+            }
+            writer.close();
+
+            assertEquals(read(whole), read(chunked));
+            assertSameSequences(alignment, readSequences(read(chunked), format));
+        }
+    }
+}
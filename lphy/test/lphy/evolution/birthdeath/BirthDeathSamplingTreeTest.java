@@ -0,0 +1,31 @@
+package lphy.evolution.birthdeath;
+
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+
+public class BirthDeathSamplingTreeTest extends TestCase {
+
+    public void testSampleIsReconstructedTree() {
+
+        BirthDeathSamplingTree birthDeath = new BirthDeathSamplingTree(new Value<>("lambda", 2.0),
+                new Value<>("mu", 1.5), new Value<>("rho", 0.5), new Value<>("rootAge", 3.0));
+
+        for (int rep = 0; rep < 200; rep++) {
+            TimeTree tree = birthDeath.sample().value();
+
+            assertEquals(2 * tree.n() - 1, tree.getNodeCount());
+            assertTrue(tree.getRoot().getAge() <= 3.0);
+
+            for (TimeTreeNode node : tree.getNodes()) {
+                if (node.isLeaf()) {
+                    assertEquals(0.0, node.getAge());
+                } else {
+                    assertEquals(2, node.getChildCount());
+                }
+                if (!node.isRoot()) assertTrue(node.getParent().getAge() >= node.getAge());
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package lphy.evolution.coalescent;
+
+import lphy.core.distributions.Utils;
+import lphy.evolution.tree.ArrayTimeTree;
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+public class MultispeciesCoalescentMultiTest extends TestCase {
+
+    private TimeTree speciesTree() {
+        ArrayTimeTree tree = new ArrayTimeTree(3);
+        int a = tree.addLeaf("a", 0.0);
+        int b = tree.addLeaf("b", 0.5);
+        int ab = tree.addInternalNode(1.0, a, b);
+        int c = tree.addLeaf("c", 0.0);
+        tree.addInternalNode(2.0, ab, c);
+        return tree.toTimeTree();
+    }
+
+    private Set<String> species(TimeTreeNode node, Set<String> species) {
+        if (node.isLeaf()) {
+            species.add(node.getId().split(MultispeciesCoalescent.separator)[0]);
+        } else {
+            for (TimeTreeNode child : node.getChildren()) {
+                species(child, species);
+            }
+        }
+        return species;
+    }
+
+    private TimeTree[] sample(int threads) {
+        Utils.setThreadRandom(new MersenneTwister(42));
+        try {
+            MultispeciesCoalescentMulti msc = new MultispeciesCoalescentMulti(
+                    new Value<>("theta", new Double[]{0.5, 0.5, 0.5, 1.0, 1.0}),
+                    new Value<>("n", new Integer[]{3, 2, 4}),
+                    new Value<>("S", speciesTree()),
+                    new Value<>("loci", 50),
+                    new Value<>("threads", threads));
+            return msc.sample().value();
+        } finally {
+            Utils.setThreadRandom(null);
+        }
+    }
+
+    public void testGeneTrees() {
+
+        TimeTree[] geneTrees = sample(1);
+        assertEquals(50, geneTrees.length);
+
+        for (TimeTree geneTree : geneTrees) {
+            assertEquals(9, geneTree.n());
+            assertEquals(17, geneTree.getNodeCount());
+            for (TimeTreeNode node : geneTree.getNodes()) {
+                if (node.isLeaf()) {
+                    // leaves are numbered in species order and take the age of their species
+                    int sp = Integer.parseInt(node.getId().split(MultispeciesCoalescent.separator)[0]);
+                    assertEquals(sp == 1 ? 0.5 : 0.0, node.getAge());
+                    assertEquals(node.getLeafIndex() < 3 ? 0 : node.getLeafIndex() < 5 ? 1 : 2, sp);
+                } else {
+                    // genes from different species coalesce no earlier than the species split
+                    Set<String> species = species(node, new TreeSet<>());
+                    if (species.contains("2") && species.size() > 1) assertTrue(node.getAge() > 2.0);
+                    else if (species.size() > 1) assertTrue(node.getAge() > 1.0);
+                    else assertTrue(node.getAge() > (species.contains("1") ? 0.5 : 0.0));
+                }
+            }
+        }
+    }
+
+    public void testThreadsDoNotChangeResult() {
+
+        TimeTree[] serial = sample(1);
+        TimeTree[] parallel = sample(4);
+
+        for (int i = 0; i < serial.length; i++) {
+            assertEquals(serial[i].toString(), parallel[i].toString());
+        }
+    }
+
+    // ((first,second):1.5,third):3.0, with leaves at the ages of their species
+    private TimeTree geneTree(String first, String second, String third) {
+        ArrayTimeTree tree = new ArrayTimeTree(3);
+        int a = tree.addLeaf(first, first.startsWith("1") ? 0.5 : 0.0);
+        int b = tree.addLeaf(second, second.startsWith("1") ? 0.5 : 0.0);
+        int ab = tree.addInternalNode(1.5, a, b);
+        int c = tree.addLeaf(third, third.startsWith("1") ? 0.5 : 0.0);
+        tree.addInternalNode(3.0, ab, c);
+        return tree.toTimeTree();
+    }
+
+    public void testLogDensity() {
+
+        MultispeciesCoalescentMulti msc = new MultispeciesCoalescentMulti(
+                new Value<>("theta", new Double[]{0.5, 0.5, 0.5, 0.5, 0.5}),
+                new Value<>("n", new Integer[]{1, 1, 1}),
+                new Value<>("S", speciesTree()),
+                new Value<>("loci", 2),
+                null);
+
+        // 0 and 1 coalesce at 1.5 in the ancestral branch from 1 to 2, and with 2 at 3 in the root branch
+        TimeTree geneTree = geneTree("0_0", "1_0", "2_0");
+        double expected = -0.5 / 0.5 - Math.log(0.5) - 1.0 / 0.5 - Math.log(0.5);
+        assertEquals(2 * expected, msc.logDensity(new TimeTree[]{geneTree, geneTree}), 1e-12);
+
+        // 0 and 2 cannot coalesce before the root species at 2
+        TimeTree misfit = geneTree("0_0", "2_0", "1_0");
+        assertEquals(Double.NEGATIVE_INFINITY, msc.logDensity(new TimeTree[]{geneTree, misfit}));
+    }
+
+    public void testLogDensityOfOnePopulationIsCoalescent() {
+
+        // species that split at age 0 are a single population
+        ArrayTimeTree species = new ArrayTimeTree(2);
+        species.addInternalNode(0.0, species.addLeaf("a", 0.0), species.addLeaf("b", 0.0));
+        Value<TimeTree> S = new Value<>("S", species.toTimeTree());
+        Value<Double[]> theta = new Value<>("theta", new Double[]{2.0, 2.0, 2.0});
+        Value<Integer[]> n = new Value<>("n", new Integer[]{3, 2});
+
+        Coalescent coalescent = new Coalescent(new Value<>("theta", 2.0), new Value<>("n", 5));
+        MultispeciesCoalescent msc = new MultispeciesCoalescent(theta, n, S);
+        for (int i = 0; i < 20; i++) {
+            TimeTree geneTree = msc.sample().value();
+            assertEquals(coalescent.logDensity(geneTree), msc.logDensity(geneTree), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lphy.evolution.coalescent;
+
+import lphy.core.distributions.Utils;
+import lphy.evolution.tree.TimeTree;
+import lphy.evolution.tree.TimeTreeNode;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+
+public class SerialCoalescentTest extends TestCase {
+
+    public void testSample() {
+
+        Double[] ages = {0.0, 0.0, 0.5, 1.0, 1.0, 3.0, 0.2};
+
+        SerialCoalescent coalescent = new SerialCoalescent(new Value<>("theta", 1.0), new Value<>("ages", ages), null);
+
+        for (int rep = 0; rep < 100; rep++) {
+            TimeTree tree = coalescent.sample().value();
+
+            assertEquals(ages.length, tree.n());
+            assertEquals(2 * ages.length - 1, tree.getNodeCount());
+
+            for (TimeTreeNode node : tree.getNodes()) {
+                if (node.isLeaf()) {
+                    assertEquals(ages[node.getLeafIndex()], node.getAge(), 0.0);
+                    assertEquals(String.valueOf(node.getLeafIndex()), node.getId());
+                } else {
+                    assertEquals(2, node.getChildCount());
+                }
+                if (!node.isRoot()) assertTrue(node.getParent().getAge() >= node.getAge());
+            }
+        }
+    }
+
+    public void testExpectedRootAge() {
+
+        // with theta = 1, the two leaves at age 0 coalesce after an Exp(1) time T. If T < 1, the root is an Exp(1)
+        // time after the third leaf at age 1; otherwise the three lineages at age 1 coalesce in an expected 4/3,
+        // so the expected root age is 2(1 - 1/e) + (1 + 4/3)/e = 2 + 1/(3e).
+        Double[] ages = {1.0, 0.0, 0.0};
+
+        Utils.setThreadRandom(new MersenneTwister(7));
+        try {
+            SerialCoalescent coalescent = new SerialCoalescent(new Value<>("theta", 1.0), new Value<>("ages", ages), null);
+            int reps = 20000;
+            double sum = 0;
+            for (int rep = 0; rep < reps; rep++) {
+                sum += coalescent.sample().value().getRoot().getAge();
+            }
+            assertEquals(2.0 + 1.0 / (3.0 * Math.E), sum / reps, 0.05);
+        } finally {
+            Utils.setThreadRandom(null);
+        }
+    }
+}
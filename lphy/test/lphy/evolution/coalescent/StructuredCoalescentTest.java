@@ -1,83 +1,145 @@
 package lphy.evolution.coalescent;
 
+import lphy.core.distributions.FenwickTree;
 import lphy.evolution.tree.TimeTree;
 import lphy.evolution.tree.TimeTreeNode;
 import lphy.graphicalModel.Value;
 import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class StructuredCoalescentTest extends TestCase {
 
-    public List<List<TimeTreeNode>> setupNodes() {
+    public List<List<TimeTreeNode>> setupNodes(int... sampleSizes) {
         TimeTree tree = new TimeTree();
 
         List<List<TimeTreeNode>> nodes = new ArrayList<>();
-        nodes.add(new ArrayList<>());
-        nodes.add(new ArrayList<>());
+        int count = 0;
+        for (int i = 0; i < sampleSizes.length; i++) {
+            nodes.add(new ArrayList<>());
+            for (int j = 0; j < sampleSizes[i]; j++) {
+                TimeTreeNode node = new TimeTreeNode(count + "", tree);
+                node.setMetaData(StructuredCoalescent.populationLabel, i);
+                nodes.get(i).add(node);
+                count += 1;
+            }
+        }
+        return nodes;
+    }
 
-        TimeTreeNode node0 = new TimeTreeNode("0", tree);
-        node0.setMetaData(StructuredCoalescent.populationLabel, 0);
-        TimeTreeNode node1 = new TimeTreeNode("1", tree);
-        node1.setMetaData(StructuredCoalescent.populationLabel, 0);
+    private static FenwickTree demeRates(List<List<TimeTreeNode>> nodes, Double[][] theta, double[][] cumulativeMigration) {
+        FenwickTree demeRates = new FenwickTree(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            StructuredCoalescent.updateDemeRate(demeRates, i, nodes.get(i).size(), theta, cumulativeMigration);
+        }
+        return demeRates;
+    }
 
-        TimeTreeNode node2 = new TimeTreeNode("2", tree);
-        node2.setMetaData(StructuredCoalescent.populationLabel, 1);
-        TimeTreeNode node3 = new TimeTreeNode("3", tree);
-        node3.setMetaData(StructuredCoalescent.populationLabel, 1);
+    // the rate of each event, coalescence in deme i on the diagonal and migration from deme i to deme j off it
+    private static double[][] eventRates(List<List<TimeTreeNode>> nodes, Double[][] theta) {
+        double[][] rates = new double[theta.length][theta.length];
+        for (int i = 0; i < rates.length; i++) {
+            int sampleSize = nodes.get(i).size();
+            for (int j = 0; j < rates.length; j++) {
+                if (i == j) rates[i][i] = sampleSize * (sampleSize - 1) / 2.0 / theta[i][i];
+                else rates[i][j] = sampleSize * theta[i][j] * theta[j][j] / theta[i][i];
+            }
+        }
+        return rates;
+    }
 
-        nodes.get(0).add(node0);
-        nodes.get(0).add(node1);
+    public void testDemeRates() {
 
-        nodes.get(1).add(node2);
-        nodes.get(1).add(node3);
+        List<List<TimeTreeNode>> nodes = setupNodes(2, 2);
+        Double[][] theta = {{1.0, 0.1}, {0.1, 1.0}};
 
-        return nodes;
-    }
+        double[][] cumulativeMigration = StructuredCoalescent.cumulativeMigration(theta);
+        assertEquals(0.0, cumulativeMigration[0][0], 1e-12);
+        assertEquals(0.1, cumulativeMigration[0][1], 1e-12);
+        assertEquals(0.1, cumulativeMigration[1][0], 1e-12);
+        assertEquals(0.1, cumulativeMigration[1][1], 1e-12);
 
-    public void testPopulateRateMatrix() {
+        // coalescence at rate 1 and migration at rate 0.2 in each deme
+        FenwickTree demeRates = demeRates(nodes, theta, cumulativeMigration);
+        assertEquals(1.2, demeRates.get(0), 1e-12);
+        assertEquals(1.2, demeRates.get(1), 1e-12);
+        assertEquals(2.4, demeRates.total(), 1e-12);
+    }
 
-        List<List<TimeTreeNode>> nodes = setupNodes();
+    public void testSelectEvent() {
 
-        Double[][] theta = {{1.0,0.1},{0.1, 1.0}};
+        List<List<TimeTreeNode>> nodes = setupNodes(2, 1, 3);
+        Double[][] theta = {{1.0, 0.1, 0.3}, {0.1, 2.0, 0.2}, {0.3, 0.2, 0.5}};
 
-        double[][] rates = new double[2][2];
+        double[][] cumulativeMigration = StructuredCoalescent.cumulativeMigration(theta);
+        FenwickTree demeRates = demeRates(nodes, theta, cumulativeMigration);
 
-        double totalRate = StructuredCoalescent.populateRateMatrix(nodes, theta, rates);
+        double[][] rates = eventRates(nodes, theta);
+        double totalRate = 0.0;
+        for (double[] row : rates) {
+            for (double rate : row) totalRate += rate;
+        }
+        assertEquals(totalRate, demeRates.total(), 1e-12);
+
+        RandomGenerator random = new MersenneTwister(18);
+        int reps = 200000;
+        int[][] events = new int[3][3];
+        for (int i = 0; i < reps; i++) {
+            int[] event = StructuredCoalescent.selectEvent(demeRates, nodes, theta, cumulativeMigration, random);
+            events[event[0]][event[1]] += 1;
+        }
 
-        double sum = 0.0;
-        for (int i = 0; i < rates.length; i++) {
-            System.out.println(Arrays.toString(rates[i]));
-            for (int j = 0; j < rates[i].length; j++) {
-                sum += rates[i][j];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(rates[i][j] / totalRate, events[i][j] / (double) reps, 0.005);
             }
         }
-        assertEquals(sum, totalRate, 1e-10);
-
+        // a deme with one lineage does not coalesce
+        assertEquals(0, events[1][1]);
     }
 
-    public void testSelectRandomEvent() {
+    public void testSample() {
+
+        Double[][] theta = {{1.0, 0.1, 0.0}, {0.1, 2.0, 0.2}, {0.0, 0.2, 0.5}};
+        Integer[] n = {3, 0, 4};
 
-        List<List<TimeTreeNode>> nodes = setupNodes();
+        StructuredCoalescent coalescent = new StructuredCoalescent(new Value<>("M", theta), new Value<>("n", n));
 
-        Double[][] theta = {{1.0,0.1},{0.1, 1.0}};
+        for (int rep = 0; rep < 100; rep++) {
+            TimeTree tree = coalescent.sample().value();
 
-        Integer[] n = {2,2};
+            assertEquals(7, tree.n());
+            assertEquals(6, tree.getNodeCount() - tree.getSingleChildNodeCount() - tree.n());
 
-        double[][] rates = new double[2][2];
+            for (TimeTreeNode node : tree.getNodes()) {
+                if (!node.isRoot()) assertTrue(node.getParent().getAge() >= node.getAge());
+                if (node.getChildCount() == 1) {
+                    // a migration never stays in the same deme, and there is no migration between demes 0 and 2
+                    int from = (Integer) node.getChildren().get(0).getMetaData(StructuredCoalescent.populationLabel);
+                    int to = (Integer) node.getMetaData(StructuredCoalescent.populationLabel);
+                    assertTrue(from != to);
+                    assertTrue(from + to != 2);
+                }
+            }
+        }
+    }
 
-        int[][] events = new int[2][2];
+    public void testSymmetricRootDeme() {
 
-        StructuredCoalescent coalescent = new StructuredCoalescent(new Value<>("theta", theta),
-                new Value<>("n", n));
+        Double[][] theta = {{1.0, 0.5}, {0.5, 1.0}};
+        Integer[] n = {2, 2};
 
-        double totalRate = coalescent.populateRateMatrix(nodes, theta, rates);
+        StructuredCoalescent coalescent = new StructuredCoalescent(new Value<>("M", theta), new Value<>("n", n));
 
-        for (int i = 0; i < 5000; i++) {
-            StructuredCoalescent.SCEvent event = coalescent.selectRandomEvent(rates, totalRate, 0);
-            events[event.pop][event.toPop] += 1;
+        int reps = 4000;
+        int count = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            TimeTree tree = coalescent.sample().value();
+            if ((Integer) tree.getRoot().getMetaData(StructuredCoalescent.populationLabel) == 0) count += 1;
         }
+        assertEquals(0.5, count / (double) reps, 0.04);
     }
 }
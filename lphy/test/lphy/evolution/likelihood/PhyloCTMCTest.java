@@ -0,0 +1,366 @@
+package lphy.evolution.likelihood;
+
+import junit.framework.TestCase;
+import lphy.core.distributions.Utils;
+import lphy.core.functions.Newick;
+import lphy.evolution.alignment.Alignment;
+import lphy.evolution.alignment.AlignmentSink;
+import lphy.evolution.coalescent.Coalescent;
+import lphy.graphicalModel.Value;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.random.MersenneTwister;
+
+import java.io.IOException;
+
+public class PhyloCTMCTest extends TestCase {
+
+    // two taxa 0.5 apart in total branch length
+    static final String PAIR = "(a:0.25,b:0.25);";
+
+    private static Double[][] jukesCantor() {
+        Double[][] Q = new Double[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                Q[i][j] = (i == j) ? -1.0 : 1.0 / 3.0;
+            }
+        }
+        return Q;
+    }
+
+    private static PhyloCTMC ctmc(String newick, Integer L, Double[] siteRates) {
+        return ctmc(newick, L, siteRates, null);
+    }
+
+    private static PhyloCTMC ctmc(String newick, Integer L, Double[] siteRates, Integer columnBlockSize) {
+        return ctmc(newick, L, siteRates, columnBlockSize, null);
+    }
+
+    private static PhyloCTMC ctmc(String newick, Integer L, Double[] siteRates, Integer columnBlockSize, Integer threads) {
+        return new PhyloCTMC(new Value<>("tree", Newick.parseNewick(newick)), null, null, new Value<>("Q", jukesCantor()),
+                siteRates == null ? null : new Value<>("siteRates", siteRates), null,
+                L == null ? null : new Value<>("L", L), null, null,
+                columnBlockSize == null ? null : new Value<>("columnBlockSize", columnBlockSize),
+                threads == null ? null : new Value<>("threads", threads));
+    }
+
+    private static String coalescentTree(int n, long seed) {
+        Utils.setThreadRandom(new MersenneTwister(seed));
+        try {
+            return new Coalescent(new Value<>("theta", 1.0), new Value<>("n", n)).sample().value().toString();
+        } finally {
+            Utils.setThreadRandom(null);
+        }
+    }
+
+    private static void assertSameStates(Alignment expected, Alignment actual) {
+        assertEquals(expected.L(), actual.L());
+        for (int taxon = 0; taxon < expected.getTaxonCount(); taxon++) {
+            for (int i = 0; i < expected.L(); i++) {
+                assertEquals(expected.getState(taxon, i), actual.getState(taxon, i));
+            }
+        }
+    }
+
+    private static Alignment sample(PhyloCTMC ctmc, long seed) {
+        ctmc.random = new MersenneTwister(seed);
+        return ctmc.sample().value();
+    }
+
+    // the Jukes-Cantor probability that the ends of a path of length d differ
+    private static double expectedPDistance(double d) {
+        return 0.75 * (1.0 - Math.exp(-4.0 * d / 3.0));
+    }
+
+    public void testPDistance() {
+        Alignment alignment = sample(ctmc(PAIR, 20000, null), 1);
+        assertEquals(expectedPDistance(0.5), differences(alignment, 0, 1), 0.015);
+    }
+
+    public void testDistinctSiteRatesAreComputedPerSite() {
+
+        // as many distinct rates as sites, so the transition probabilities are computed for each site
+        int length = 20000;
+        Double[] siteRates = new Double[length];
+        for (int i = 0; i < length; i++) {
+            siteRates[i] = (i % 2 == 0) ? 0.5 + i * 1e-9 : 1.5 - i * 1e-9;
+        }
+        Alignment alignment = sample(ctmc(PAIR, null, siteRates), 2);
+
+        double expected = (expectedPDistance(0.25) + expectedPDistance(0.75)) / 2.0;
+        assertEquals(expected, differences(alignment, 0, 1), 0.015);
+    }
+
+    private static PhyloCTMC categoryCtmc(String newick, Double[] siteRates, Integer[] siteCategories, Double[] categoryRates) {
+        return new PhyloCTMC(new Value<>("tree", Newick.parseNewick(newick)), null, null, new Value<>("Q", jukesCantor()),
+                siteRates == null ? null : new Value<>("siteRates", siteRates), null, null,
+                new Value<>("siteCategories", siteCategories), new Value<>("categoryRates", categoryRates), null, null);
+    }
+
+    public void testSiteCategories() {
+
+        int length = 20000;
+        Integer[] siteCategories = new Integer[length];
+        Double[] categoryRates = {0.5, 1.5};
+        Double[] siteRates = new Double[length];
+        for (int i = 0; i < length; i++) {
+            siteCategories[i] = i % 2;
+            siteRates[i] = categoryRates[i % 2];
+        }
+        Alignment alignment = sample(categoryCtmc(PAIR, null, siteCategories, categoryRates), 2);
+        assertEquals(length, alignment.L());
+
+        double expected = (expectedPDistance(0.25) + expectedPDistance(0.75)) / 2.0;
+        assertEquals(expected, differences(alignment, 0, 1), 0.015);
+
+        // the same rates given per site are collapsed into the same categories
+        assertSameStates(sample(ctmc(PAIR, null, siteRates), 2), alignment);
+
+        try {
+            sample(categoryCtmc(PAIR, siteRates, siteCategories, categoryRates), 2);
+            fail("siteRates and siteCategories can't both be given");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        siteCategories[7] = 2;
+        try {
+            sample(categoryCtmc(PAIR, null, siteCategories, categoryRates), 2);
+            fail("a site category must index into the category rates");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    public void testTransitionProbabilitiesOverCacheLimit() {
+
+        String newick = "((a:0.1,b:0.1):0.2,(c:0.05,d:0.05):0.25);";
+        int length = 20000;
+        Integer[] siteCategories = new Integer[length];
+        Double[] categoryRates = {0.25, 1.0, 2.5};
+        for (int i = 0; i < length; i++) {
+            siteCategories[i] = (i * 7) % 3;
+        }
+
+        Alignment cached = sample(categoryCtmc(newick, null, siteCategories, categoryRates), 4);
+
+        // no tables fit, so each column block computes the transition probabilities once per category
+        PhyloCTMC ctmc = categoryCtmc(newick, null, siteCategories, categoryRates);
+        ctmc.maxCachedTransitionProbabilities = 0;
+        Alignment uncached = sample(ctmc, 5);
+
+        int[][] pairs = {{0, 1}, {0, 2}, {2, 3}, {1, 3}};
+        for (int[] pair : pairs) {
+            assertEquals(differences(cached, pair[0], pair[1]), differences(uncached, pair[0], pair[1]), 0.02);
+        }
+        double expected = 0.0;
+        for (double rate : categoryRates) {
+            expected += expectedPDistance(0.2 * rate) / categoryRates.length;
+        }
+        assertEquals(expected, differences(uncached, 0, 1), 0.015);
+
+        // the same as asking for the default column blocks
+        ctmc.setParam(ctmc.columnBlockSizeParamName, new Value<>("columnBlockSize", PhyloCTMC.DEFAULT_COLUMN_BLOCK_SIZE));
+        assertSameStates(uncached, sample(ctmc, 5));
+    }
+
+    public void testColumnBlocksHaveSameDistributionAsSites() {
+
+        // a tree with internal branches, so that blocks pass states down more than one branch
+        String newick = "((a:0.1,b:0.1):0.2,(c:0.05,d:0.05):0.25);";
+        int length = 20000;
+        Alignment sites = sample(ctmc(newick, length, null), 3);
+        Alignment blocks = sample(ctmc(newick, length, null, 100), 4);
+        // a block size that does not divide the length
+        Alignment unevenBlocks = sample(ctmc(newick, length, null, 777), 5);
+
+        int[][] pairs = {{0, 1}, {0, 2}, {2, 3}, {1, 3}};
+        for (int[] pair : pairs) {
+            double expected = differences(sites, pair[0], pair[1]);
+            assertEquals(expected, differences(blocks, pair[0], pair[1]), 0.02);
+            assertEquals(expected, differences(unevenBlocks, pair[0], pair[1]), 0.02);
+        }
+        // a and b are 0.2 apart, a and c 0.6
+        assertEquals(expectedPDistance(0.2), differences(blocks, 0, 1), 0.015);
+        assertEquals(expectedPDistance(0.6), differences(blocks, 0, 2), 0.015);
+
+        int[] counts = stateCounts(blocks);
+        for (int count : counts) {
+            assertEquals(0.25, count / (4.0 * length), 0.01);
+        }
+    }
+
+    public void testThreadsDoNotChangeAlignment() {
+
+        String newick = coalescentTree(20, 6);
+        int length = 5000;
+
+        Alignment oneThread = sample(ctmc(newick, length, null, 100, 1), 42);
+        for (int threads : new int[]{2, 7}) {
+            assertSameStates(oneThread, sample(ctmc(newick, length, null, 100, threads), 42));
+        }
+        // the default block size, with fewer blocks than threads
+        oneThread = sample(ctmc(newick, length, null, null, 1), 42);
+        assertSameStates(oneThread, sample(ctmc(newick, length, null, null, 8), 42));
+
+        // transition probabilities computed per site, into each block's own scratch space
+        Double[] siteRates = new Double[length];
+        for (int i = 0; i < length; i++) {
+            siteRates[i] = 0.5 + i / (double) length;
+        }
+        oneThread = sample(ctmc(newick, null, siteRates, 64, 1), 42);
+        assertSameStates(oneThread, sample(ctmc(newick, null, siteRates, 64, 4), 42));
+
+        // but the seed does change it
+        Alignment otherSeed = sample(ctmc(newick, null, siteRates, 64, 4), 43);
+        int same = 0;
+        for (int i = 0; i < length; i++) {
+            if (oneThread.getState(0, i) == otherSeed.getState(0, i)) same += 1;
+        }
+        assertTrue(same < length);
+    }
+
+    public void testStreamedSampleMatchesColumnBlocks() throws IOException {
+
+        String newick = coalescentTree(6, 8);
+        int length = 1000;
+        Alignment blocks = sample(ctmc(newick, length, null, 300), 9);
+
+        // the sink copies each chunk into a full alignment
+        StringBuilder[] sequences = new StringBuilder[6];
+        int[] written = {0};
+        AlignmentSink sink = new AlignmentSink() {
+            public void start(String[] taxaNames, String dataTypeDescription, int siteCount) {
+                assertEquals(length, siteCount);
+                assertEquals("nucleotide", dataTypeDescription);
+                for (int i = 0; i < sequences.length; i++) sequences[i] = new StringBuilder();
+            }
+
+            public void write(Alignment chunk, int start) {
+                assertEquals(written[0], start);
+                for (int i = 0; i < sequences.length; i++) sequences[i].append(chunk.getSequence(i));
+                written[0] += chunk.L();
+            }
+
+            public void close() {
+                assertEquals(length, written[0]);
+            }
+        };
+        PhyloCTMC ctmc = ctmc(newick, length, null);
+        ctmc.random = new MersenneTwister(9L);
+        ctmc.sample(sink, 300);
+
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(blocks.getSequence(i), sequences[i].toString());
+        }
+
+        try {
+            ctmc.sample(sink, 0);
+            fail("a chunk size of 0 is not allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testSinkIsClosedWhenWritingFails() {
+
+        int[] closed = {0};
+        AlignmentSink sink = new AlignmentSink() {
+            public void start(String[] taxaNames, String dataTypeDescription, int siteCount) {
+            }
+
+            public void write(Alignment chunk, int start) throws IOException {
+                if (start > 0) throw new IOException("disk full");
+            }
+
+            public void close() {
+                closed[0] += 1;
+            }
+        };
+
+        try {
+            ctmc(PAIR, 100, null).sample(sink, 30);
+            fail("the second chunk fails to write");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertEquals(1, closed[0]);
+    }
+
+    // an F81 rate matrix, whose equilibrium frequencies are freqs
+    private static Double[][] f81(double[] freqs) {
+        Double[][] Q = new Double[4][4];
+        for (int i = 0; i < 4; i++) {
+            double rowSum = 0.0;
+            for (int j = 0; j < 4; j++) {
+                if (i != j) {
+                    Q[i][j] = freqs[j];
+                    rowSum += freqs[j];
+                }
+            }
+            Q[i][i] = -rowSum;
+        }
+        return Q;
+    }
+
+    public void testDecompositionIsReusedWhileQIsUnchanged() {
+
+        String newick = "((a:0.1,b:0.1):0.2,(c:0.05,d:0.05):0.25);";
+        PhyloCTMC ctmc = ctmc(newick, 100, null);
+        sample(ctmc, 10);
+        EigenDecomposition decomposition = ctmc.decomposition;
+        Value<Double[]> equilibrium = ctmc.equilibriumFreqs;
+        assertNotNull(decomposition);
+        assertNotNull(equilibrium);
+
+        sample(ctmc, 11);
+        assertSame(decomposition, ctmc.decomposition);
+        assertSame(equilibrium, ctmc.equilibriumFreqs);
+
+        // a new value with the same entries is still the same rate matrix
+        ctmc.setParam(ctmc.QParamName, new Value<>("Q", jukesCantor()));
+        sample(ctmc, 12);
+        assertSame(decomposition, ctmc.decomposition);
+        assertSame(equilibrium, ctmc.equilibriumFreqs);
+
+        // but a different rate matrix is decomposed again, with its own equilibrium frequencies
+        double[] freqs = {0.1, 0.2, 0.3, 0.4};
+        ctmc.setParam(ctmc.QParamName, new Value<>("Q", f81(freqs)));
+        Alignment changed = sample(ctmc, 13);
+        assertNotSame(decomposition, ctmc.decomposition);
+        assertNotSame(equilibrium, ctmc.equilibriumFreqs);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(freqs[i], ctmc.equilibriumFreqs.value()[i], 1e-6);
+        }
+
+        // and samples as a PhyloCTMC constructed with it does
+        PhyloCTMC fresh = new PhyloCTMC(new Value<>("tree", Newick.parseNewick(newick)), null, null, new Value<>("Q", f81(freqs)),
+                null, null, new Value<>("L", 100), null, null, null, null);
+        assertSameStates(sample(fresh, 13), changed);
+
+        // as does changing an entry of the current rate matrix in place
+        decomposition = ctmc.decomposition;
+        ctmc.Q.value()[0][1] += 0.1;
+        ctmc.Q.value()[0][0] -= 0.1;
+        sample(ctmc, 14);
+        assertNotSame(decomposition, ctmc.decomposition);
+    }
+
+    // the proportion of sites at which two taxa differ
+    private static double differences(Alignment alignment, int taxon1, int taxon2) {
+        int differences = 0;
+        for (int i = 0; i < alignment.L(); i++) {
+            if (alignment.getState(taxon1, i) != alignment.getState(taxon2, i)) differences += 1;
+        }
+        return differences / (double) alignment.L();
+    }
+
+    private static int[] stateCounts(Alignment alignment) {
+        int[] counts = new int[4];
+        for (int taxon = 0; taxon < alignment.getTaxonCount(); taxon++) {
+            for (int i = 0; i < alignment.L(); i++) {
+                counts[alignment.getState(taxon, i)] += 1;
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,54 @@
+package lphy.evolution.substitutionmodel;
+
+import junit.framework.TestCase;
+import lphy.graphicalModel.Value;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+
+public class TransitionProbabilitiesTest extends TestCase {
+
+    /**
+     * Compares the closed form against a Taylor series of e^{Qt}.
+     */
+    private void assertMatchesMatrixExponential(RateMatrix rateMatrix, double t) {
+
+        Double[][] Q = rateMatrix.apply().value();
+        double[][] Qt = new double[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                Qt[i][j] = Q[i][j] * t;
+            }
+        }
+
+        RealMatrix A = new Array2DRowRealMatrix(Qt);
+        RealMatrix P = MatrixUtils.createRealIdentityMatrix(4);
+        RealMatrix term = P;
+        for (int k = 1; k < 60; k++) {
+            term = term.multiply(A).scalarMultiply(1.0 / k);
+            P = P.add(term);
+        }
+
+        double[][] transProbs = new double[4][4];
+        ((HasTransitionProbabilities) rateMatrix).getTransitionProbabilities(t, transProbs);
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(P.getEntry(i, j), transProbs[i][j], 1e-12);
+            }
+        }
+    }
+
+    public void testClosedForms() {
+
+        Value<Double[]> freq = new Value<>("freq", new Double[]{0.1, 0.2, 0.3, 0.4});
+
+        for (double t : new double[]{0.01, 0.37, 2.5}) {
+            assertMatchesMatrixExponential(new JukesCantor(new Value<>("rate", 1.7)), t);
+            assertMatchesMatrixExponential(new K80(new Value<>("kappa", 3.0)), t);
+            assertMatchesMatrixExponential(new F81(freq), t);
+            assertMatchesMatrixExponential(new HKY(new Value<>("kappa", 3.0), freq), t);
+            assertMatchesMatrixExponential(new TN93(new Value<>("kappa1", 3.0), new Value<>("kappa2", 6.0), freq), t);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package lphy.evolution.tree;
+
+import junit.framework.TestCase;
+
+public class ArrayTimeTreeTest extends TestCase {
+
+    public void testToTimeTree() {
+
+        ArrayTimeTree tree = new ArrayTimeTree(3);
+        int a = tree.addLeaf("a", 0.0);
+        int b = tree.addLeaf(null, 0.5);
+        int ab = tree.addInternalNode(1.0, a, b);
+        int c = tree.addLeaf("c", 0.0);
+        int root = tree.addInternalNode(3.0, ab, c);
+        tree.setMetaData(b, "rate", 2.0);
+
+        assertEquals(root, tree.getRoot());
+        assertEquals(2, tree.getChildCount(root));
+        assertEquals("1", tree.getId(b));
+        assertEquals(2, tree.getLeafIndex(c));
+        assertNull(tree.getMetaData(a, "rate"));
+
+        TimeTree timeTree = tree.toTimeTree();
+        assertEquals(3, timeTree.n());
+        assertEquals(5, timeTree.getNodeCount());
+        assertEquals("((a:1.0,1[&rate=2.0]:0.5):2.0,c:3.0):0.0;", timeTree.toString());
+    }
+
+    public void testRoundTrip() {
+
+        ArrayTimeTree tree = new ArrayTimeTree(2);
+        int[] leaves = new int[5];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = tree.addLeaf("t" + i, 0.0);
+        }
+        int x = tree.addInternalNode(1.0, leaves[3], leaves[1]);
+        int y = tree.addInternalNode(2.0, new int[]{leaves[0], x, leaves[4]});
+        tree.addInternalNode(4.0, y, leaves[2]);
+
+        TimeTree timeTree = tree.toTimeTree();
+        TimeTree copy = ArrayTimeTree.fromTimeTree(timeTree).toTimeTree();
+
+        assertEquals(timeTree.toString(), copy.toString());
+        assertEquals("((t0:2.0,(t3:1.0,t1:1.0):1.0,t4:2.0):2.0,t2:4.0):0.0;", copy.toString());
+    }
+}
@@ -0,0 +1,43 @@
+package lphy.evolution.tree;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class TimeTreeTest extends TestCase {
+
+    public void testTraversalOrders() {
+
+        ArrayTimeTree tree = new ArrayTimeTree(3);
+        int a = tree.addLeaf("a", 0.0);
+        int b = tree.addLeaf("b", 0.0);
+        int ab = tree.addInternalNode(1.0, a, b);
+        int c = tree.addLeaf("c", 0.0);
+        tree.addInternalNode(2.0, c, ab);
+
+        TimeTree timeTree = tree.toTimeTree();
+
+        // leaves are 0..2, internal nodes are numbered in post-order
+        assertEquals("[2, 0, 1, 3, 4]", Arrays.toString(timeTree.getPostorder()));
+        assertEquals("[4, 2, 3, 0, 1]", Arrays.toString(timeTree.getPreorder()));
+        assertEquals("(c:2.0,(a:1.0,b:1.0):1.0):0.0;", timeTree.toString());
+    }
+
+    public void testDeepCaterpillar() {
+
+        int n = 100000;
+        ArrayTimeTree tree = new ArrayTimeTree(n);
+        int node = tree.addLeaf("t0", 0.0);
+        for (int i = 1; i < n; i++) {
+            int leaf = tree.addLeaf("t" + i, 0.0);
+            node = tree.addInternalNode(i, node, leaf);
+        }
+
+        TimeTree timeTree = tree.toTimeTree();
+
+        assertEquals(2 * n - 1, timeTree.getNodeCount());
+        assertEquals(timeTree.getRoot().getIndex(), timeTree.getPreorder()[0]);
+        assertEquals(timeTree.getRoot().getIndex(), timeTree.getPostorder()[2 * n - 2]);
+        assertTrue(timeTree.toString().startsWith("((((("));
+    }
+}
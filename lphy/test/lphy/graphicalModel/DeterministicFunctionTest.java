@@ -0,0 +1,27 @@
+package lphy.graphicalModel;
+
+import junit.framework.TestCase;
+import lphy.evolution.substitutionmodel.HKY;
+
+public class DeterministicFunctionTest extends TestCase {
+
+    public void testGenerateReusesValueWhileInputsAreUnchanged() {
+
+        Value<Double> kappa = new Value<>("kappa", 2.0);
+        Value<Double[]> freq = new Value<>("freq", new Double[]{0.1, 0.2, 0.3, 0.4});
+        HKY hky = new HKY(kappa, freq);
+
+        Value<Double[][]> Q = hky.generate();
+        assertSame(Q, hky.generate());
+
+        kappa.setValue(4.0);
+        Value<Double[][]> Q2 = hky.generate();
+        assertNotSame(Q, Q2);
+        assertFalse(Q.value()[0][2].equals(Q2.value()[0][2]));
+        assertSame(Q2, hky.generate());
+
+        // a different input value object also invalidates the cached value
+        hky.setInput("freq", new Value<>("freq", new Double[]{0.25, 0.25, 0.25, 0.25}));
+        assertNotSame(Q2, hky.generate());
+    }
+}
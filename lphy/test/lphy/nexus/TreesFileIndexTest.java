@@ -0,0 +1,142 @@
+package lphy.nexus;
+
+import lphy.core.distributions.Utils;
+import lphy.core.functions.ReadTrees;
+import lphy.evolution.coalescent.Coalescent;
+import lphy.evolution.tree.EmpiricalTree;
+import lphy.evolution.tree.TimeTree;
+import lphy.graphicalModel.Value;
+import junit.framework.TestCase;
+import org.apache.commons.math3.random.MersenneTwister;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TreesFileIndexTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("treesFileIndex").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    public void testNexusWriterFile() throws Exception {
+
+        Coalescent coalescent = new Coalescent(new Value<>("theta", 1.0), new Value<>("n", 10));
+        List<TimeTree> trees = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            trees.add(coalescent.sample().value());
+        }
+        File file = new File(dir, "test.trees");
+        try (PrintStream out = new PrintStream(new FileOutputStream(file), true, "UTF-8")) {
+            NexusWriter.write(null, trees, out);
+        }
+
+        TreesFileIndex index = new TreesFileIndex(file);
+        assertEquals(50, index.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("TREE_" + i, index.getTreeName(i));
+            assertEquals(trees.get(i).toString(), index.getNewick(i) + ";");
+            TimeTree tree = index.getTree(i);
+            assertEquals(10, tree.n());
+            assertEquals(trees.get(i).getRoot().getAge(), tree.getRoot().getAge(), 1e-12);
+        }
+    }
+
+    public void testTranslateAndComments() throws IOException {
+
+        File file = write("beast.trees", "#NEXUS\n\n" +
+                "Begin taxa;\n\tDimensions ntax=3;\n\t\tTaxlabels\n\t\t\ta\n\t\t\tb\n\t\t\t'c d'\n\t\t\t;\nEnd;\n" +
+                "Begin trees;\n\tTranslate\n\t\t1 a,\n\t\t2 b,\n\t\t3 'c d'\n;\n" +
+                "tree STATE_0 [&lnP=-12.5,posterior=-3.0] = [&R] ((1:1.0,2:1.0):1.0,3[&rate=0.5]:2.0);\n" +
+                "tree STATE_1000 = [&R] (1:2.0,(2:1.0,3:1.0):1.0);\n" +
+                "End;\n");
+
+        TreesFileIndex index = new TreesFileIndex(file);
+        assertEquals(2, index.size());
+        assertEquals("STATE_0", index.getTreeName(0));
+        assertEquals("STATE_1000", index.getTreeName(1));
+
+        TimeTree tree = index.getTree(0);
+        assertEquals(3, tree.n());
+        assertEquals(2.0, tree.getRoot().getAge(), 1e-12);
+        List<String> taxa = new ArrayList<>();
+        for (String taxon : tree.getTaxaNames()) taxa.add(taxon);
+        assertTrue(taxa.contains("a") && taxa.contains("b") && taxa.contains("c d"));
+        assertEquals(0.5, tree.getNodeByIndex(taxa.indexOf("c d")).getMetaData("rate"));
+    }
+
+    public void testQuotesAndNestedBracketsInComments() throws IOException {
+
+        File file = write("comments.trees", "#NEXUS\n[this file's trees]\n" +
+                "begin trees;\n" +
+                "\ttree A [[nested] comment; with 'quotes] = [&R] (a:1,b:1);\n" +
+                "\ttree B = [[&R]] ('x;y':1,b[&note=\"it's\"]:2);\n" +
+                "end;\n");
+
+        TreesFileIndex index = new TreesFileIndex(file);
+        assertEquals(2, index.size());
+        assertEquals("A", index.getTreeName(0));
+        assertEquals("(a:1,b:1)", index.getNewick(0));
+        assertEquals(1.0, index.getTree(0).getRoot().getAge(), 1e-12);
+        assertEquals("B", index.getTreeName(1));
+        assertEquals("('x;y':1,b[&note=\"it's\"]:2)", index.getNewick(1));
+        assertEquals(2, index.getTree(1).n());
+    }
+
+    public void testNewickFile() throws IOException {
+
+        File file = write("test.newick", "((a:1,b:1):1,c:2);\n(a:1,(b:0.5,c:0.5):0.5);\n\n");
+
+        TreesFileIndex index = new TreesFileIndex(file);
+        assertEquals(2, index.size());
+        assertEquals("TREE_1", index.getTreeName(1));
+        assertEquals(1.0, index.getTree(1).getRoot().getAge(), 1e-12);
+    }
+
+    public void testEmpiricalTree() throws IOException {
+
+        StringBuilder text = new StringBuilder("#NEXUS\nbegin trees;\n");
+        for (int i = 0; i < 10; i++) {
+            text.append("\ttree TREE_").append(i).append(" = [&R] (a:").append(i + 1).append(",b:").append(i + 1).append(");\n");
+        }
+        File file = write("test.trees", text.append("end;\n").toString());
+
+        Value<TreesFileIndex> trees = new ReadTrees(new Value<>("file", file.getPath())).apply();
+        assertEquals(10, trees.value().size());
+
+        Utils.setThreadRandom(new MersenneTwister(1));
+        try {
+            EmpiricalTree empiricalTree = new EmpiricalTree(trees, new Value<>("burnin", 5));
+            boolean[] drawn = new boolean[10];
+            for (int i = 0; i < 200; i++) {
+                double age = empiricalTree.sample().value().getRoot().getAge();
+                drawn[(int) Math.round(age) - 1] = true;
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i >= 5, drawn[i]);
+            }
+        } finally {
+            Utils.setThreadRandom(null);
+        }
+    }
+}